@@ -0,0 +1,142 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare two JMH result files in CSV format (java -jar benchmarks.jar -rf csv -rff result.csv) and report regressions.
+ * <p>
+ * Usage: java -cp benchmarks.jar org.exoplatform.web.login.redirect.benchmark.CompareResults baseline.csv current.csv [threshold]
+ * <p>
+ * Threshold is relative change of score considered as regression (default 0.10). For throughput mode lower score is
+ * worse, for other modes higher score is worse. Exit code is 1 if any benchmark regressed, so the comparison can be
+ * used in CI build.
+ *
+ * @version $Revision$
+ */
+public class CompareResults {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults baseline.csv current.csv [threshold]");
+            System.exit(2);
+        }
+
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> current = read(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format("%-90s %15s %15s %9s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println(String.format("%-90s %15s %15.3f %9s", entry.getKey(), "-", now.score, "new"));
+                continue;
+            }
+
+            double change = (now.score - before.score) / before.score;
+            boolean higherIsBetter = "thrpt".equals(now.mode);
+            boolean regression = higherIsBetter ? change < -threshold : change > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.println(String.format("%-90s %15.3f %15.3f %+8.1f%% %s", entry.getKey(), before.score, now.score,
+                    change * 100, regression ? "REGRESSION" : ""));
+        }
+
+        System.out.println(regressions + " regression(s) with threshold " + (threshold * 100) + "%");
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Key is benchmark name with values of parameters
+    private static Map<String, Result> read(String fileName) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            List<String> header = parseLine(reader.readLine());
+            int benchmarkColumn = header.indexOf("Benchmark");
+            int modeColumn = header.indexOf("Mode");
+            int scoreColumn = header.indexOf("Score");
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+
+                List<String> values = parseLine(line);
+                StringBuilder key = new StringBuilder(values.get(benchmarkColumn));
+                for (int i = 0; i < header.size(); i++) {
+                    if (header.get(i).startsWith("Param: ") && i < values.size() && values.get(i).length() > 0) {
+                        key.append(' ').append(header.get(i).substring(7)).append('=').append(values.get(i));
+                    }
+                }
+                results.put(key.toString(), new Result(values.get(modeColumn), Double.parseDouble(values.get(scoreColumn))));
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    private static List<String> parseLine(String line) {
+        List<String> values = new ArrayList<String>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static class Result {
+        private final String mode;
+        private final double score;
+
+        private Result(String mode, double score) {
+            this.mode = mode;
+            this.score = score;
+        }
+    }
+
+}
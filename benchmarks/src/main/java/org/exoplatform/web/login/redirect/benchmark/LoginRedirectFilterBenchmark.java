@@ -0,0 +1,171 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.exoplatform.services.security.ConversationState;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityRegistry;
+import org.exoplatform.web.login.redirect.LoginRedirectConversationListener;
+import org.exoplatform.web.login.redirect.LoginRedirectService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of LoginRedirectFilter.doFilter for typical kinds of requests. Filter wraps every request of portal, so anonymous
+ * and authenticated steady state requests are the most important ones. Parameter loginDetection compares detection of login by
+ * lookup in registry of logged users with detection by flag set by {@link LoginRedirectConversationListener}.
+ *
+ * @version $Revision$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginRedirectFilterBenchmark {
+
+    @Param({ "100" })
+    public int mappings;
+
+    @Param({ "10" })
+    public int memberships;
+
+    @Param({ "registry", "event" })
+    public String loginDetection;
+
+    private LoginRedirectService service;
+    private StandaloneLoginRedirectFilter filter;
+
+    private MockServlet.Request anonymousRequest;
+    private MockServlet.Request staticResourceRequest;
+    private MockServlet.Request steadyStateRequest;
+    private MockServlet.Request loginRequest;
+    private MockServlet.Request logoutRequest;
+    private MockServlet.Response response;
+    private MockServlet.Chain chain;
+
+    private boolean loginAsFirstUser;
+
+    // Conversation state of current thread used in event detection mode
+    private ConversationState conversationState;
+
+    @Setup
+    public void setUp() throws ServletException, IOException {
+        IdentityRegistry identityRegistry = RedirectFixtures.createIdentityRegistry();
+        Identity identity = RedirectFixtures.createIdentity("user1", memberships, mappings - 1);
+        identityRegistry.register(identity);
+        identityRegistry.register(RedirectFixtures.createIdentity("user2", memberships, 0));
+        service = RedirectFixtures.createService(RedirectFixtures.createMappings(mappings), identityRegistry,
+                new HashMap<String, String>());
+
+        Map<String, String> initParams = new HashMap<String, String>();
+        initParams.put("excludedPathPrefixes", "/skins/,/javascript/");
+        initParams.put("excludedExtensions", "css,js,png,gif");
+        initParams.put("loginDetection", loginDetection);
+        filter = new StandaloneLoginRedirectFilter(service);
+        filter.initialize(MockServlet.createFilterConfig(initParams));
+
+        response = new MockServlet.Response();
+        chain = new MockServlet.Chain();
+
+        anonymousRequest = new MockServlet.Request();
+        staticResourceRequest = new MockServlet.Request().setRemoteUser("user1").setSession(new MockServlet.Session("static"))
+                .setRequestURI("/portal/skins/Default/Stylesheet.css");
+        steadyStateRequest = new MockServlet.Request().setRemoteUser("user1").setSession(new MockServlet.Session("steady"));
+        loginRequest = new MockServlet.Request().setRemoteUser("user1").setSession(new MockServlet.Session("login"));
+        logoutRequest = new MockServlet.Request().setRemoteUser("user1").setSession(new MockServlet.Session("logout"))
+                .setParameters(MockServlet.logoutParameters());
+
+        // Portal binds conversation state to thread, which processes request of authenticated user
+        conversationState = new ConversationState(identity);
+        ConversationState.setCurrent(conversationState);
+        LoginRedirectConversationListener.markLogin(conversationState);
+
+        // First request of session detects login, following requests are steady state
+        filter.doFilter(steadyStateRequest.getProxy(), response.getProxy(), chain);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ConversationState.setCurrent(null);
+        service.stop();
+    }
+
+    @Benchmark
+    public long anonymous() throws IOException, ServletException {
+        filter.doFilter(anonymousRequest.getProxy(), response.getProxy(), chain);
+        return chain.getCount();
+    }
+
+    @Benchmark
+    public long staticResource() throws IOException, ServletException {
+        filter.doFilter(staticResourceRequest.getProxy(), response.getProxy(), chain);
+        return chain.getCount();
+    }
+
+    @Benchmark
+    public long authenticatedSteadyState() throws IOException, ServletException {
+        filter.doFilter(steadyStateRequest.getProxy(), response.getProxy(), chain);
+        return chain.getCount();
+    }
+
+    // Every invocation is re-login of different user in the same session, so login is always detected
+    @Benchmark
+    public String loginTransition() throws IOException, ServletException {
+        loginAsFirstUser = !loginAsFirstUser;
+        loginRequest.setRemoteUser(loginAsFirstUser ? "user1" : "user2");
+        if ("event".equals(loginDetection)) {
+            // Registration of new conversation state during authentication
+            LoginRedirectConversationListener.markLogin(conversationState);
+        }
+        filter.doFilter(loginRequest.getProxy(), response.getProxy(), chain);
+        return response.getRedirect();
+    }
+
+    // Includes registration of user in session registry, which is removed by every logout
+    @Benchmark
+    public String logout() throws IOException, ServletException {
+        service.getSessionUserRegistry().putUser("logout", "user1", 1800000);
+        filter.doFilter(logoutRequest.getProxy(), response.getProxy(), chain);
+        return response.getRedirect();
+    }
+
+}
@@ -0,0 +1,419 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.benchmark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.Cookie;
+
+import org.exoplatform.services.security.ConversationState;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityRegistry;
+import org.exoplatform.web.login.LoginServlet;
+import org.exoplatform.web.login.redirect.LatencyHistogram;
+import org.exoplatform.web.login.redirect.LoginRedirectConversationListener;
+import org.exoplatform.web.login.redirect.LoginRedirectService;
+import org.exoplatform.web.login.redirect.SessionUserRegistry;
+import org.exoplatform.web.login.redirect.TokenRevocationQueue;
+
+/**
+ * Concurrent load and soak test of LoginRedirectFilter. Worker threads replay mix of anonymous, steady state, login,
+ * re-login (different user in the same session), logout and session expiration requests across simulated sessions and
+ * users. Each simulated session is used by one request at a time like a browser, many sessions are used in parallel.
+ * Every report interval, throughput, latencies, sizes of registries and used heap are printed. Outcome of each request is
+ * checked (login and logout must redirect, other requests must pass), so races are reported as unexpected outcomes.
+ * <p>
+ * Usage: java -cp benchmarks.jar org.exoplatform.web.login.redirect.benchmark.LoginRedirectFilterLoadTest [name=value ...]
+ * <p>
+ * Parameters (defaults in brackets): threads [16], sessions [10000], users [1000], mappings [100], duration in seconds
+ * [60], report interval in seconds [10], loginDetection [registry], asyncTokenRevocation [false], gc before heap
+ * measurement [true] and percentages of operations anonymous [30], steady [60], login [4], relogin [1], logout [4], expire
+ * [1]. Exit code is 1 if some request failed or had unexpected outcome.
+ *
+ * @version $Revision$
+ */
+public class LoginRedirectFilterLoadTest {
+
+    private enum Operation {
+        ANONYMOUS("anonymous", 30), STEADY("steady", 60), LOGIN("login", 4), RELOGIN("relogin", 1), LOGOUT("logout", 4), EXPIRE(
+                "expire", 1);
+
+        private final String parameter;
+        private final int defaultPercentage;
+
+        private Operation(String parameter, int defaultPercentage) {
+            this.parameter = parameter;
+            this.defaultPercentage = defaultPercentage;
+        }
+    }
+
+    private final Map<String, String> parameters;
+    private final int threads;
+    private final int users;
+    private final long duration;
+    private final long reportInterval;
+    private final boolean gc;
+    private final boolean eventLoginDetection;
+
+    // Operation selected by random number between 0 and 99
+    private final Operation[] operationTable = new Operation[100];
+
+    private final LoginRedirectService service;
+    private final StandaloneLoginRedirectFilter filter;
+    private final Identity[] identities;
+    private final SimulatedSession[] sessions;
+
+    private final Map<Operation, OperationStatistics> statistics = new LinkedHashMap<Operation, OperationStatistics>();
+    private final AtomicLong errors = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public LoginRedirectFilterLoadTest(Map<String, String> parameters) throws Exception {
+        this.parameters = parameters;
+        this.threads = getInt("threads", 16);
+        this.users = getInt("users", 1000);
+        this.duration = getInt("duration", 60) * 1000L;
+        this.reportInterval = getInt("report", 10) * 1000L;
+        this.gc = !"false".equals(parameters.get("gc"));
+
+        int mappings = getInt("mappings", 100);
+        String loginDetection = get("loginDetection", "registry");
+        this.eventLoginDetection = "event".equals(loginDetection);
+
+        int index = 0;
+        for (Operation operation : Operation.values()) {
+            int percentage = getInt(operation.parameter, operation.defaultPercentage);
+            for (int i = 0; i < percentage; i++) {
+                if (index == operationTable.length) {
+                    throw new IllegalArgumentException("Sum of percentages of operations is more than 100");
+                }
+                operationTable[index++] = operation;
+            }
+            statistics.put(operation, new OperationStatistics());
+        }
+        if (index != operationTable.length) {
+            throw new IllegalArgumentException("Sum of percentages of operations must be 100, but it's " + index);
+        }
+
+        IdentityRegistry identityRegistry = RedirectFixtures.createIdentityRegistry();
+        identities = new Identity[users];
+        for (int i = 0; i < users; i++) {
+            identities[i] = RedirectFixtures.createIdentity("user" + i, 10, i % mappings);
+            identityRegistry.register(identities[i]);
+        }
+        service = RedirectFixtures.createService(RedirectFixtures.createMappings(mappings), identityRegistry,
+                new HashMap<String, String>());
+
+        Map<String, String> initParams = new HashMap<String, String>();
+        initParams.put("excludedPathPrefixes", "/skins/,/javascript/");
+        initParams.put("excludedExtensions", "css,js,png,gif");
+        initParams.put("loginDetection", loginDetection);
+        initParams.put("asyncTokenRevocation", get("asyncTokenRevocation", "false"));
+        filter = new StandaloneLoginRedirectFilter(service);
+        filter.initialize(MockServlet.createFilterConfig(initParams));
+
+        sessions = new SimulatedSession[getInt("sessions", 10000)];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = new SimulatedSession(i);
+        }
+    }
+
+    private String get(String name, String defaultValue) {
+        String value = parameters.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private int getInt(String name, int defaultValue) {
+        return Integer.parseInt(get(name, String.valueOf(defaultValue)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> parameters = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                System.err.println("Usage: LoginRedirectFilterLoadTest [name=value ...]");
+                System.exit(2);
+            }
+            parameters.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        LoginRedirectFilterLoadTest test = new LoginRedirectFilterLoadTest(parameters);
+        boolean passed = test.run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Run test and print reports.
+     *
+     * @return true if all requests had expected outcome
+     * @throws InterruptedException
+     */
+    public boolean run() throws InterruptedException {
+        System.out.println("Load test with " + threads + " threads, " + sessions.length + " sessions, " + users + " users, "
+                + (eventLoginDetection ? "event" : "registry") + " login detection");
+        System.out.println(String.format("%8s %10s %10s %10s %10s %10s %10s %10s", "time[s]", "req/s", "steady99", "login99",
+                "logout99", "sessions", "logoutURLs", "heap[MB]"));
+
+        final CountDownLatch finished = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final long seed = i;
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        work(new Random(seed));
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "LoadTest-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long start = System.currentTimeMillis();
+        long lastReport = start;
+        long lastCount = 0;
+        long initialHeap = -1;
+        long heap = 0;
+        while (System.currentTimeMillis() - start < duration) {
+            Thread.sleep(Math.min(reportInterval, duration - (System.currentTimeMillis() - start)));
+
+            long now = System.currentTimeMillis();
+            long count = getTotalCount();
+            heap = usedHeap();
+            if (initialHeap < 0) {
+                // First interval includes warm up of JIT and registries
+                initialHeap = heap;
+            }
+            SessionUserRegistry registry = service.getSessionUserRegistry();
+            System.out.println(String.format("%8d %10d %10.1f %10.1f %10.1f %10d %10d %10.1f", (now - start) / 1000,
+                    (count - lastCount) * 1000 / Math.max(1, now - lastReport), micros(statistics.get(Operation.STEADY).interval),
+                    micros(statistics.get(Operation.LOGIN).interval), micros(statistics.get(Operation.LOGOUT).interval),
+                    registry.getSessionCount(), registry.getLogoutURLCount(), heap / 1048576.0));
+            for (OperationStatistics operationStatistics : statistics.values()) {
+                operationStatistics.interval.reset();
+            }
+            lastReport = now;
+            lastCount = count;
+        }
+
+        running = false;
+        finished.await();
+
+        System.out.println();
+        System.out.println(String.format("%-10s %10s %10s %10s  %s", "operation", "requests", "redirects", "unexpected",
+                "latency"));
+        long unexpected = 0;
+        for (Map.Entry<Operation, OperationStatistics> entry : statistics.entrySet()) {
+            OperationStatistics operationStatistics = entry.getValue();
+            unexpected += operationStatistics.unexpected.get();
+            System.out.println(String.format("%-10s %10d %10d %10d  %s", entry.getKey().parameter,
+                    operationStatistics.total.getCount(), operationStatistics.redirects.get(),
+                    operationStatistics.unexpected.get(), operationStatistics.total));
+        }
+
+        System.out.println("Decision latency: " + service.getStatistics().getDecisionLatency());
+        System.out.println("Deleted tokens: " + filter.getDeletedTokens());
+        TokenRevocationQueue queue = filter.getTokenRevocationQueue();
+        if (queue != null) {
+            System.out.println("Token revocation queue: peak depth " + queue.getPeakQueueDepth() + ", synchronous revocations "
+                    + queue.getSynchronousRevocations());
+        }
+        System.out.println(String.format("Heap growth after first interval: %.1f MB", (heap - initialHeap) / 1048576.0));
+        System.out.println("Errors: " + errors.get() + ", unexpected outcomes: " + unexpected);
+
+        filter.destroy();
+        service.stop();
+        return errors.get() == 0 && unexpected == 0;
+    }
+
+    private void work(Random random) {
+        MockServlet.Request request = new MockServlet.Request();
+        MockServlet.Response response = new MockServlet.Response();
+        MockServlet.Chain chain = new MockServlet.Chain();
+
+        while (running) {
+            Operation operation = operationTable[random.nextInt(operationTable.length)];
+            SimulatedSession session = sessions[random.nextInt(sessions.length)];
+            try {
+                synchronized (session) {
+                    execute(operation, session, random, request, response, chain);
+                }
+            } catch (Throwable t) {
+                if (errors.getAndIncrement() < 10) {
+                    t.printStackTrace();
+                }
+            } finally {
+                ConversationState.setCurrent(null);
+            }
+        }
+    }
+
+    private void execute(Operation operation, SimulatedSession session, Random random, MockServlet.Request request,
+            MockServlet.Response response, MockServlet.Chain chain) throws Exception {
+        // Operations, which need logged user, are replaced by login in sessions without user and vice versa
+        if (session.user == null && (operation == Operation.STEADY || operation == Operation.LOGOUT)) {
+            operation = Operation.LOGIN;
+        } else if (session.user == null && operation == Operation.RELOGIN) {
+            operation = Operation.LOGIN;
+        } else if (session.user != null && operation == Operation.LOGIN) {
+            operation = Operation.STEADY;
+        }
+
+        request.setRequestURI("/portal/classic/home").setParameters(Collections.<String, String> emptyMap()).setCookies();
+        response.reset();
+        boolean expectRedirect;
+        switch (operation) {
+        case ANONYMOUS:
+            request.setRemoteUser(null).setSession(null);
+            expectRedirect = false;
+            break;
+        case STEADY:
+            request.setRemoteUser(session.user.getUserId()).setSession(session.session);
+            ConversationState.setCurrent(session.conversationState);
+            expectRedirect = false;
+            break;
+        case LOGIN:
+        case RELOGIN:
+            Identity identity = identities[random.nextInt(users)];
+            if (operation == Operation.RELOGIN && identity == session.user) {
+                identity = identities[(random.nextInt(users - 1) + 1 + indexOf(identity)) % users];
+            }
+            session.login(identity);
+            request.setRemoteUser(identity.getUserId()).setSession(session.session);
+            ConversationState.setCurrent(session.conversationState);
+            expectRedirect = true;
+            break;
+        case LOGOUT:
+            request.setRemoteUser(session.user.getUserId()).setSession(session.session)
+                    .setParameters(MockServlet.logoutParameters());
+            if (random.nextBoolean()) {
+                request.setCookies(new Cookie(LoginServlet.COOKIE_NAME, "token-" + session.index + "-" + session.generation));
+            }
+            ConversationState.setCurrent(session.conversationState);
+            expectRedirect = true;
+            break;
+        case EXPIRE:
+            long start = System.nanoTime();
+            service.getSessionUserRegistry().sessionDestroyed(session.session.getId());
+            session.invalidate();
+            statistics.get(operation).record(System.nanoTime() - start, false, false);
+            return;
+        default:
+            throw new IllegalStateException("Unknown operation " + operation);
+        }
+
+        long start = System.nanoTime();
+        filter.doFilter(request.getProxy(), response.getProxy(), chain);
+        long time = System.nanoTime() - start;
+
+        boolean redirected = response.getRedirect() != null;
+        statistics.get(operation).record(time, redirected, redirected != expectRedirect);
+
+        if (operation == Operation.LOGOUT) {
+            // Portal invalidates session after logout
+            service.getSessionUserRegistry().sessionDestroyed(session.session.getId());
+            session.invalidate();
+        }
+    }
+
+    private int indexOf(Identity identity) {
+        return Integer.parseInt(identity.getUserId().substring("user".length()));
+    }
+
+    private long getTotalCount() {
+        long count = 0;
+        for (OperationStatistics operationStatistics : statistics.values()) {
+            count += operationStatistics.total.getCount();
+        }
+        return count;
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        if (gc) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double micros(LatencyHistogram histogram) {
+        return histogram.getPercentile(0.99) / 1000.0;
+    }
+
+    // HTTP session of one simulated client
+    private class SimulatedSession {
+        private final int index;
+        private int generation;
+        private MockServlet.Session session;
+        private Identity user;
+        private ConversationState conversationState;
+
+        private SimulatedSession(int index) {
+            this.index = index;
+            this.session = new MockServlet.Session(index + "-0");
+        }
+
+        private void login(Identity identity) {
+            user = identity;
+            // Portal registers new conversation state during authentication
+            conversationState = new ConversationState(identity);
+            if (eventLoginDetection) {
+                LoginRedirectConversationListener.markLogin(conversationState);
+            }
+        }
+
+        private void invalidate() {
+            generation++;
+            session = new MockServlet.Session(index + "-" + generation);
+            user = null;
+            conversationState = null;
+        }
+    }
+
+    private static class OperationStatistics {
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LatencyHistogram interval = new LatencyHistogram();
+        private final AtomicLong redirects = new AtomicLong();
+        private final AtomicLong unexpected = new AtomicLong();
+
+        private void record(long nanos, boolean redirected, boolean unexpectedOutcome) {
+            total.record(nanos);
+            interval.record(nanos);
+            if (redirected) {
+                redirects.incrementAndGet();
+            }
+            if (unexpectedOutcome) {
+                unexpected.incrementAndGet();
+            }
+        }
+    }
+
+}
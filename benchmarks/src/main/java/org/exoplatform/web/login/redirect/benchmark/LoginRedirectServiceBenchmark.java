@@ -0,0 +1,104 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.benchmark;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.services.security.IdentityRegistry;
+import org.exoplatform.web.login.redirect.LoginRedirectService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of redirect decision in LoginRedirectService for different number of mappings and user memberships.<br />
+ * User "matching" has membership in group of the last mapping, which is the worst case for scanning of mappings.
+ * User "nonmatching" gets default URLs.
+ *
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginRedirectServiceBenchmark {
+
+    @Param({ "1", "100", "1000", "10000" })
+    public int mappings;
+
+    @Param({ "1", "10", "100" })
+    public int memberships;
+
+    private LoginRedirectService service;
+
+    @Setup
+    public void setUp() {
+        IdentityRegistry identityRegistry = RedirectFixtures.createIdentityRegistry();
+        identityRegistry.register(RedirectFixtures.createIdentity("matching", memberships, mappings - 1));
+        identityRegistry.register(RedirectFixtures.createIdentity("nonmatching", memberships, -1));
+
+        service = RedirectFixtures.createService(RedirectFixtures.createMappings(mappings), identityRegistry,
+                new HashMap<String, String>());
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.stop();
+    }
+
+    @Benchmark
+    public String loginMatching() {
+        return service.getLoginRedirectURL("matching");
+    }
+
+    @Benchmark
+    public String loginNonMatching() {
+        return service.getLoginRedirectURL("nonmatching");
+    }
+
+    // Logout without previous login resolves logout URL from identity registry
+    @Benchmark
+    public String logoutFromIdentityRegistry() {
+        return service.getLogoutRedirectURL("nonmatching");
+    }
+
+    // Logout after login uses logout URL resolved during login
+    @Benchmark
+    public String loginLogoutCycle() {
+        service.getLoginRedirectURL("matching");
+        return service.getLogoutRedirectURL("matching");
+    }
+
+}
@@ -0,0 +1,301 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * In-process mock objects of servlet API used by benchmarks and load tests. Mocks are implemented with dynamic proxies,
+ * so they don't depend on version of servlet API. Overhead of proxies is the same for all measured builds.
+ *
+ * @version $Revision$
+ */
+public class MockServlet {
+
+    /**
+     * Mutable mock of HTTP request. It can be reused for many invocations of filter from the same thread.
+     */
+    public static class Request implements InvocationHandler {
+        private final HttpServletRequest proxy;
+        private String contextPath = "/portal";
+        private String requestURI = "/portal/classic/home";
+        private String remoteUser;
+        private Session session;
+        private Map<String, String> parameters = Collections.emptyMap();
+        private Cookie[] cookies;
+
+        public Request() {
+            proxy = (HttpServletRequest) Proxy.newProxyInstance(MockServlet.class.getClassLoader(),
+                    new Class<?>[] { HttpServletRequest.class }, this);
+        }
+
+        public HttpServletRequest getProxy() {
+            return proxy;
+        }
+
+        public Request setRequestURI(String requestURI) {
+            this.requestURI = requestURI;
+            return this;
+        }
+
+        public Request setRemoteUser(String remoteUser) {
+            this.remoteUser = remoteUser;
+            return this;
+        }
+
+        public Request setSession(Session session) {
+            this.session = session;
+            return this;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public Request setParameters(Map<String, String> parameters) {
+            this.parameters = parameters;
+            return this;
+        }
+
+        public Request setCookies(Cookie... cookies) {
+            this.cookies = cookies.length == 0 ? null : cookies;
+            return this;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getRequestURI".equals(name)) {
+                return requestURI;
+            } else if ("getContextPath".equals(name)) {
+                return contextPath;
+            } else if ("getRemoteUser".equals(name)) {
+                return remoteUser;
+            } else if ("getParameter".equals(name)) {
+                return parameters.get(args[0]);
+            } else if ("getSession".equals(name)) {
+                boolean create = args == null || args.length == 0 || (Boolean) args[0];
+                if (session == null && create) {
+                    session = new Session("created-" + System.nanoTime());
+                }
+                return session == null ? null : session.getProxy();
+            } else if ("getCookies".equals(name)) {
+                return cookies;
+            } else if ("isRequestedSessionIdFromCookie".equals(name)) {
+                return session != null;
+            }
+            return defaultValue(proxy, method, args);
+        }
+    }
+
+    /**
+     * Mock of HTTP session.
+     */
+    public static class Session implements InvocationHandler {
+        private final HttpSession proxy;
+        private final String id;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+
+        public Session(String id) {
+            this.id = id;
+            proxy = (HttpSession) Proxy.newProxyInstance(MockServlet.class.getClassLoader(),
+                    new Class<?>[] { HttpSession.class }, this);
+        }
+
+        public HttpSession getProxy() {
+            return proxy;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getId".equals(name)) {
+                return id;
+            } else if ("getMaxInactiveInterval".equals(name)) {
+                return 1800;
+            } else if ("getAttribute".equals(name)) {
+                return attributes.get(args[0]);
+            } else if ("setAttribute".equals(name)) {
+                if (args[1] == null) {
+                    attributes.remove(args[0]);
+                } else {
+                    attributes.put((String) args[0], args[1]);
+                }
+                return null;
+            } else if ("removeAttribute".equals(name)) {
+                attributes.remove(args[0]);
+                return null;
+            }
+            return defaultValue(proxy, method, args);
+        }
+    }
+
+    /**
+     * Mock of HTTP response, which remembers last redirect.
+     */
+    public static class Response implements InvocationHandler {
+        private final HttpServletResponse proxy;
+        private String redirect;
+
+        public Response() {
+            proxy = (HttpServletResponse) Proxy.newProxyInstance(MockServlet.class.getClassLoader(),
+                    new Class<?>[] { HttpServletResponse.class }, this);
+        }
+
+        public HttpServletResponse getProxy() {
+            return proxy;
+        }
+
+        public String getRedirect() {
+            return redirect;
+        }
+
+        public void reset() {
+            redirect = null;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("encodeRedirectURL".equals(name) || "encodeURL".equals(name)) {
+                return args[0];
+            } else if ("sendRedirect".equals(name)) {
+                redirect = (String) args[0];
+                return null;
+            }
+            return defaultValue(proxy, method, args);
+        }
+    }
+
+    /**
+     * Filter chain, which only counts passed requests.
+     */
+    public static class Chain implements FilterChain {
+        private long count;
+
+        public void doFilter(ServletRequest request, ServletResponse response) {
+            count++;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * @param initParams init parameters of filter
+     * @return filter config with mock servlet context
+     */
+    public static FilterConfig createFilterConfig(final Map<String, String> initParams) {
+        final Map<String, Object> contextAttributes = new ConcurrentHashMap<String, Object>();
+        final ServletContext servletContext = (ServletContext) Proxy.newProxyInstance(MockServlet.class.getClassLoader(),
+                new Class<?>[] { ServletContext.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if ("getAttribute".equals(name)) {
+                            return contextAttributes.get(args[0]);
+                        } else if ("setAttribute".equals(name)) {
+                            contextAttributes.put((String) args[0], args[1]);
+                            return null;
+                        } else if ("removeAttribute".equals(name)) {
+                            contextAttributes.remove(args[0]);
+                            return null;
+                        } else if ("getServletContextName".equals(name) || "getContextPath".equals(name)) {
+                            return "portal";
+                        }
+                        return defaultValue(proxy, method, args);
+                    }
+                });
+
+        return (FilterConfig) Proxy.newProxyInstance(MockServlet.class.getClassLoader(), new Class<?>[] { FilterConfig.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if ("getInitParameter".equals(name)) {
+                            return initParams.get(args[0]);
+                        } else if ("getServletContext".equals(name)) {
+                            return servletContext;
+                        } else if ("getFilterName".equals(name)) {
+                            return "LoginRedirectFilter";
+                        }
+                        return defaultValue(proxy, method, args);
+                    }
+                });
+    }
+
+    public static Map<String, String> logoutParameters() {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("portal:componentId", "UIPortal");
+        parameters.put("portal:action", "Logout");
+        return parameters;
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("equals".equals(name) && args != null && args.length == 1) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(name) && args == null) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(name) && args == null) {
+            return "Mock" + method.getDeclaringClass().getSimpleName() + "@" + System.identityHashCode(proxy);
+        }
+
+        Class<?> type = method.getReturnType();
+        if (!type.isPrimitive() || type == Void.TYPE) {
+            return null;
+        } else if (type == Boolean.TYPE) {
+            return Boolean.FALSE;
+        } else if (type == Integer.TYPE) {
+            return 0;
+        } else if (type == Long.TYPE) {
+            return 0L;
+        } else if (type == Short.TYPE) {
+            return (short) 0;
+        } else if (type == Byte.TYPE) {
+            return (byte) 0;
+        } else if (type == Character.TYPE) {
+            return (char) 0;
+        } else if (type == Float.TYPE) {
+            return 0f;
+        }
+        return 0d;
+    }
+
+}
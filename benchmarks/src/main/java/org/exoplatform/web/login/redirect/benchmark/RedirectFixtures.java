@@ -0,0 +1,128 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ObjectParameter;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityRegistry;
+import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.web.login.redirect.LoginRedirectService;
+import org.exoplatform.web.login.redirect.MappingParam;
+import org.exoplatform.web.login.redirect.RedirectMappingConfig;
+
+/**
+ * Factory of services, mappings and identities used by benchmarks and load tests.
+ *
+ * @version $Revision$
+ */
+public class RedirectFixtures {
+
+    public static final String DEFAULT_LOGIN_URL = "/portal/classic/home";
+    public static final String DEFAULT_LOGOUT_URL = "/portal/classic/sitemap";
+
+    /**
+     * Create mappings for groups /bench/group0 ... /bench/group(count-1). Every second mapping uses wildcard membership type.
+     *
+     * @param count number of mappings
+     * @return mapping configuration
+     */
+    public static RedirectMappingConfig createMappings(int count) {
+        List<MappingParam> mappings = new ArrayList<MappingParam>(count);
+        for (int i = 0; i < count; i++) {
+            MappingParam mapping = new MappingParam();
+            mapping.setGroupName((i % 2 == 0 ? "*" : "manager") + ":/bench/group" + i);
+            mapping.setLoginURL("/portal/classic/login" + i);
+            mapping.setLogoutURL("/portal/classic/logout" + i);
+            mappings.add(mapping);
+        }
+
+        RedirectMappingConfig config = new RedirectMappingConfig();
+        config.setRedirectMappings(mappings);
+        return config;
+    }
+
+    public static IdentityRegistry createIdentityRegistry() {
+        return new IdentityRegistry(new InitParams());
+    }
+
+    /**
+     * @param config mappings
+     * @param identityRegistry identity registry
+     * @param valueParams additional value params of service
+     * @return service initialized outside of portal container
+     */
+    public static LoginRedirectService createService(RedirectMappingConfig config, IdentityRegistry identityRegistry,
+            Map<String, String> valueParams) {
+        InitParams params = new InitParams();
+        addValueParam(params, "defaultLoginURL", DEFAULT_LOGIN_URL);
+        addValueParam(params, "defaultLogoutURL", DEFAULT_LOGOUT_URL);
+        for (Map.Entry<String, String> entry : valueParams.entrySet()) {
+            addValueParam(params, entry.getKey(), entry.getValue());
+        }
+
+        ObjectParameter mappingsParam = new ObjectParameter();
+        mappingsParam.setName("redirectMappings");
+        mappingsParam.setObject(config);
+        params.put(mappingsParam.getName(), mappingsParam);
+
+        LoginRedirectService service = new LoginRedirectService(params, identityRegistry);
+        service.start();
+        return service;
+    }
+
+    /**
+     * Create identity with given number of memberships. If matchingGroup is not negative, one of memberships matches mapping
+     * of this group. Other memberships don't match any mapping.
+     *
+     * @param userName name of user
+     * @param memberships number of memberships
+     * @param matchingGroup index of group with matching mapping or -1
+     * @return identity
+     */
+    public static Identity createIdentity(String userName, int memberships, int matchingGroup) {
+        Set<MembershipEntry> entries = new HashSet<MembershipEntry>();
+        if (matchingGroup >= 0) {
+            entries.add(new MembershipEntry("/bench/group" + matchingGroup, "manager"));
+        }
+        for (int i = entries.size(); i < memberships; i++) {
+            entries.add(new MembershipEntry("/bench/other" + i, "member"));
+        }
+        return new Identity(userName, entries);
+    }
+
+    private static void addValueParam(InitParams params, String name, String value) {
+        ValueParam param = new ValueParam();
+        param.setName(name);
+        param.setValue(value);
+        params.put(name, param);
+    }
+
+}
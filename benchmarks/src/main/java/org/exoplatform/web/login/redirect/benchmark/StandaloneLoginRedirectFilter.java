@@ -0,0 +1,91 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.exoplatform.web.login.redirect.LoginRedirectFilter;
+import org.exoplatform.web.login.redirect.LoginRedirectService;
+import org.exoplatform.web.security.security.AbstractTokenService;
+
+/**
+ * LoginRedirectFilter, which can run outside of portal container. Service is given directly instead of lookup from
+ * container, logout from servlet container is skipped and deleted remember-me tokens are only counted.
+ *
+ * @version $Revision$
+ */
+public class StandaloneLoginRedirectFilter extends LoginRedirectFilter {
+
+    private final LoginRedirectService service;
+
+    private final AtomicLong deletedTokens = new AtomicLong();
+
+    public StandaloneLoginRedirectFilter(LoginRedirectService service) {
+        this.service = service;
+    }
+
+    /**
+     * Initialize filter without portal container.
+     *
+     * @param config filter config
+     * @throws ServletException
+     */
+    public void initialize(FilterConfig config) throws ServletException {
+        afterInit(config);
+    }
+
+    @Override
+    protected LoginRedirectService lookupRedirectService() {
+        return service;
+    }
+
+    @Override
+    protected void deleteToken(String token) {
+        deletedTokens.incrementAndGet();
+    }
+
+    @Override
+    protected void deleteRevokedToken(String token) {
+        deleteToken(token);
+    }
+
+    // There is no token service outside of portal container
+    @Override
+    protected AbstractTokenService getTokenService() {
+        return null;
+    }
+
+    public long getDeletedTokens() {
+        return deletedTokens.get();
+    }
+
+    @Override
+    protected void logoutFromContainer(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+    }
+
+}
@@ -0,0 +1,143 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gatein.common.logging.Logger;
+
+/**
+ * Warning, which is logged at most once per interval. Occurrences between two reports are only counted and then logged as
+ * one summary line with detail of the first of them, for example "15 identities missing in last 7 s (first user: john)",
+ * where time is measured from the first reported occurrence. First occurrence is logged immediately. Pending occurrences are
+ * reported by the first occurrence after interval elapses or by {@link #flush()}, which owner calls when it's stopped, so
+ * burst followed by silence is not lost.<br />
+ * Recording of occurrence doesn't allocate and it writes only to striped counter, detail is written once per summary, so it
+ * can be used on paths executed for every request.
+ *
+ * @version $Revision$
+ */
+public class AggregatedWarning {
+
+    private final Logger log;
+    private final String message;
+    private final String detailName;
+    private final long intervalMillis;
+
+    private final StripedCounter occurrences = new StripedCounter();
+    private final AtomicLong lastReport = new AtomicLong();
+
+    // Detail and time of first occurrence after last report. They are written only when detail is null.
+    private volatile String firstDetail;
+    private volatile long firstTime;
+
+    /**
+     * @param log logger used for reports
+     * @param message description of occurrences, for example "identities missing"
+     * @param detailName name of detail, for example "user"
+     * @param intervalMillis minimal interval between two reports
+     */
+    public AggregatedWarning(Logger log, String message, String detailName, long intervalMillis) {
+        this.log = log;
+        this.message = message;
+        this.detailName = detailName;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Record occurrence and log summary if interval since last report elapsed.
+     *
+     * @param detail detail of this occurrence, for example name of user
+     */
+    public void warn(String detail) {
+        warn(detail, System.currentTimeMillis());
+    }
+
+    /**
+     * Record occurrence at given time and log summary if interval since last report elapsed.
+     *
+     * @param detail detail of this occurrence
+     * @param now current time in milliseconds
+     * @return true if summary was logged
+     */
+    public boolean warn(String detail, long now) {
+        occurrences.increment();
+
+        long last = lastReport.get();
+        if (last != 0 && now - last < intervalMillis) {
+            if (firstDetail == null) {
+                firstTime = now;
+                firstDetail = detail;
+            }
+            return false;
+        }
+        // Only one of concurrent threads reports
+        if (!lastReport.compareAndSet(last, now)) {
+            return false;
+        }
+        report(now, detail);
+        return true;
+    }
+
+    /**
+     * Log summary of occurrences, which were not reported yet, regardless of interval.
+     */
+    public void flush() {
+        long now = System.currentTimeMillis();
+        lastReport.set(now);
+        report(now, null);
+    }
+
+    private void report(long now, String detail) {
+        String first = firstDetail;
+        long since = firstTime;
+        firstDetail = null;
+        long count = occurrences.sumThenReset();
+        if (count > 0) {
+            if (first == null) {
+                report(count, 0, detail);
+            } else {
+                report(count, now - since, first);
+            }
+        }
+    }
+
+    /**
+     * Log summary of occurrences.
+     *
+     * @param count number of occurrences since last report
+     * @param elapsedMillis time since first of the occurrences or 0 if it's the only occurrence or its time isn't known
+     * @param detail detail of first of the occurrences or null if it isn't known
+     */
+    protected void report(long count, long elapsedMillis, String detail) {
+        StringBuilder summary = new StringBuilder().append(count).append(' ').append(message);
+        if (elapsedMillis > 0) {
+            summary.append(" in last ").append((elapsedMillis + 999) / 1000).append(" s");
+        }
+        if (detail != null) {
+            summary.append(" (first ").append(detailName).append(": ").append(detail).append(')');
+        }
+        log.warn(summary.toString());
+    }
+
+}
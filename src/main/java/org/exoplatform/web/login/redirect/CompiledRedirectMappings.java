@@ -0,0 +1,157 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.exoplatform.services.security.MembershipEntry;
+
+/**
+ * Redirect mappings compiled into index keyed by group. Memberships of user are probed against this index, so the first
+ * suitable mapping is found in time proportional to number of user memberships instead of number of mappings.<br />
+ * Result is the same as if mappings were checked one by one in their order with {@link org.exoplatform.services.security.Identity#isMemberOf(MembershipEntry)}.
+ *
+ * @version $Revision$
+ */
+public class CompiledRedirectMappings {
+
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    // Mappings in order of their priority
+    private final MappingParam[] mappings;
+
+    // Decisions precomputed for each mapping
+    private final RedirectDecision[] decisions;
+
+    // Key is group, value is table of membership types with index of first mapping for each type
+    private final Map<String, GroupMatch> groups = new HashMap<String, GroupMatch>();
+
+    /**
+     * @param orderedMappings mappings in order of their priority
+     */
+    public CompiledRedirectMappings(Map<MembershipEntry, MappingParam> orderedMappings) {
+        this(new ArrayList<MembershipEntry>(orderedMappings.keySet()), new ArrayList<MappingParam>(orderedMappings.values()));
+    }
+
+    /**
+     * @param memberships parsed group of each mapping
+     * @param orderedMappings mappings in order of their priority
+     */
+    public CompiledRedirectMappings(List<MembershipEntry> memberships, List<MappingParam> orderedMappings) {
+        mappings = new MappingParam[orderedMappings.size()];
+        decisions = new RedirectDecision[orderedMappings.size()];
+
+        for (int index = 0; index < mappings.length; index++) {
+            MembershipEntry membership = memberships.get(index);
+            GroupMatch groupMatch = groups.get(membership.getGroup());
+            if (groupMatch == null) {
+                groupMatch = new GroupMatch();
+                groups.put(membership.getGroup(), groupMatch);
+            }
+            groupMatch.add(membership.getMembershipType(), index);
+            MappingParam mapping = orderedMappings.get(index);
+            decisions[index] = new RedirectDecision(mapping.getGroupName(), mapping.getLoginURL(), mapping.getLogoutURL());
+            mappings[index] = mapping;
+        }
+    }
+
+    /**
+     * @param memberships memberships of user
+     * @return index of first mapping suitable for given memberships or -1 if there is no such mapping
+     */
+    public int findMappingIndex(Collection<MembershipEntry> memberships) {
+        int result = NO_MATCH;
+        for (MembershipEntry membership : memberships) {
+            GroupMatch groupMatch = groups.get(membership.getGroup());
+            if (groupMatch != null) {
+                int index = groupMatch.match(membership.getMembershipType());
+                if (index < result) {
+                    result = index;
+                    if (result == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return result == NO_MATCH ? -1 : result;
+    }
+
+    /**
+     * @param memberships memberships of user
+     * @return first mapping suitable for given memberships or null if there is no such mapping
+     */
+    public MappingParam findMapping(Collection<MembershipEntry> memberships) {
+        int index = findMappingIndex(memberships);
+        return index < 0 ? null : mappings[index];
+    }
+
+    /**
+     * @param memberships memberships of user
+     * @return decision of first mapping suitable for given memberships or null if there is no such mapping
+     */
+    public RedirectDecision findDecision(Collection<MembershipEntry> memberships) {
+        int index = findMappingIndex(memberships);
+        return index < 0 ? null : decisions[index];
+    }
+
+    public MappingParam getMapping(int index) {
+        return mappings[index];
+    }
+
+    public int size() {
+        return mappings.length;
+    }
+
+    private static class GroupMatch {
+        // Index of first mapping with membership type "*" for this group
+        private int anyTypeIndex = NO_MATCH;
+
+        // Index of first mapping for this group with any membership type
+        private int firstIndex = NO_MATCH;
+
+        private final Map<String, Integer> typeIndexes = new HashMap<String, Integer>(4);
+
+        private void add(String membershipType, int index) {
+            if (MembershipEntry.ANY_TYPE.equals(membershipType)) {
+                anyTypeIndex = Math.min(anyTypeIndex, index);
+            } else if (!typeIndexes.containsKey(membershipType)) {
+                typeIndexes.put(membershipType, index);
+            }
+            firstIndex = Math.min(firstIndex, index);
+        }
+
+        private int match(String membershipType) {
+            if (MembershipEntry.ANY_TYPE.equals(membershipType)) {
+                return firstIndex;
+            }
+
+            Integer typeIndex = typeIndexes.get(membershipType);
+            return typeIndex == null ? anyTypeIndex : Math.min(anyTypeIndex, typeIndex);
+        }
+    }
+
+}
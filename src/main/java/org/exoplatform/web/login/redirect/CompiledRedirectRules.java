@@ -0,0 +1,257 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.exoplatform.services.security.MembershipEntry;
+
+/**
+ * Redirect rules compiled into bit masks. Each distinct membership used by any rule gets index of bit. Memberships of
+ * user are converted into bitset once and then conditions of rules are checked by operations with 64 bit words in order
+ * of rule priority. Masks contain only non-empty words, so check of rule doesn't depend on total number of memberships
+ * used by rules.
+ *
+ * @version $Revision$
+ */
+public class CompiledRedirectRules {
+
+    private static final Comparator<RedirectRule> PRIORITY_ORDER = new Comparator<RedirectRule>() {
+        public int compare(RedirectRule o1, RedirectRule o2) {
+            return o1.getPriority() > o2.getPriority() ? -1 : (o1.getPriority() == o2.getPriority() ? 0 : 1);
+        }
+    };
+
+    // Rules in order of their evaluation
+    private final RedirectRule[] rules;
+    private final RedirectDecision[] decisions;
+    private final Mask[] allOf;
+    private final Mask[] anyOf;
+    private final Mask[] noneOf;
+
+    // Key is group, value contains bits of memberships with this group
+    private final Map<String, GroupBits> groups = new HashMap<String, GroupBits>();
+    private int bitCount;
+
+    /**
+     * @param orderedRules rules in order of their definition. Rules are stable sorted by their priority.
+     * @throws IllegalArgumentException if some membership or URL of rule is not valid
+     */
+    public CompiledRedirectRules(List<RedirectRule> orderedRules) {
+        List<RedirectRule> sorted = new ArrayList<RedirectRule>(orderedRules);
+        Collections.sort(sorted, PRIORITY_ORDER);
+
+        rules = sorted.toArray(new RedirectRule[sorted.size()]);
+        decisions = new RedirectDecision[rules.length];
+        allOf = new Mask[rules.length];
+        anyOf = new Mask[rules.length];
+        noneOf = new Mask[rules.length];
+
+        for (int i = 0; i < rules.length; i++) {
+            RedirectRule rule = rules[i];
+            allOf[i] = createMask(parseMemberships(rule.getAllOf()));
+            anyOf[i] = createMask(parseMemberships(rule.getAnyOf()));
+            noneOf[i] = createMask(parseMemberships(rule.getNoneOf()));
+            String name = rule.getName() != null ? rule.getName() : rule.toString();
+            decisions[i] = new RedirectDecision("rule " + name, name, rule.getLoginURL(), rule.getLogoutURL());
+        }
+    }
+
+    /**
+     * @param memberships memberships separated by commas or null
+     * @return parsed memberships
+     */
+    public static List<MembershipEntry> parseMemberships(String memberships) {
+        List<MembershipEntry> result = new ArrayList<MembershipEntry>();
+        if (memberships != null) {
+            for (String membership : memberships.split(",")) {
+                membership = membership.trim();
+                if (membership.length() > 0) {
+                    result.add(MembershipEntry.parse(membership));
+                }
+            }
+        }
+        return result;
+    }
+
+    private Mask createMask(List<MembershipEntry> memberships) {
+        Map<Integer, Long> words = new HashMap<Integer, Long>();
+        for (MembershipEntry membership : memberships) {
+            GroupBits groupBits = groups.get(membership.getGroup());
+            if (groupBits == null) {
+                groupBits = new GroupBits();
+                groups.put(membership.getGroup(), groupBits);
+            }
+            int bit = groupBits.getOrCreateBit(membership.getMembershipType());
+            Long word = words.get(bit >>> 6);
+            words.put(bit >>> 6, (word == null ? 0L : word) | (1L << bit));
+        }
+
+        List<Integer> indexes = new ArrayList<Integer>(words.keySet());
+        Collections.sort(indexes);
+        Mask mask = new Mask(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            mask.indexes[i] = indexes.get(i);
+            mask.bits[i] = words.get(indexes.get(i));
+        }
+        return mask;
+    }
+
+    /**
+     * @param memberships memberships of user
+     * @return bitset with bits of all rule memberships matched by given memberships
+     */
+    public long[] toBits(Collection<MembershipEntry> memberships) {
+        long[] bits = new long[(bitCount + 63) >>> 6];
+        for (MembershipEntry membership : memberships) {
+            GroupBits groupBits = groups.get(membership.getGroup());
+            if (groupBits != null) {
+                groupBits.set(membership.getMembershipType(), bits);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @param memberships memberships of user
+     * @return index of first suitable rule in order of priority or -1 if there is no such rule
+     */
+    public int findRuleIndex(Collection<MembershipEntry> memberships) {
+        long[] bits = toBits(memberships);
+        for (int i = 0; i < rules.length; i++) {
+            if (allOf[i].containsAll(bits) && (anyOf[i].isEmpty() || anyOf[i].intersects(bits))
+                    && !noneOf[i].intersects(bits)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param memberships memberships of user
+     * @return decision of first suitable rule or null if there is no such rule
+     */
+    public RedirectDecision findDecision(Collection<MembershipEntry> memberships) {
+        int index = findRuleIndex(memberships);
+        return index < 0 ? null : decisions[index];
+    }
+
+    /**
+     * @param index index of rule in order of priority
+     * @return rule
+     */
+    public RedirectRule getRule(int index) {
+        return rules[index];
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * @return number of distinct memberships used by rules
+     */
+    public int getBitCount() {
+        return bitCount;
+    }
+
+    private class GroupBits {
+        // Bit of membership with type "*" for this group or -1
+        private int anyTypeBit = -1;
+
+        private final Map<String, Integer> typeBits = new HashMap<String, Integer>(4);
+
+        private int getOrCreateBit(String membershipType) {
+            if (MembershipEntry.ANY_TYPE.equals(membershipType)) {
+                if (anyTypeBit < 0) {
+                    anyTypeBit = bitCount++;
+                }
+                return anyTypeBit;
+            }
+
+            Integer bit = typeBits.get(membershipType);
+            if (bit == null) {
+                bit = bitCount++;
+                typeBits.put(membershipType, bit);
+            }
+            return bit;
+        }
+
+        // Set bits of rule memberships satisfied by membership of user with given type
+        private void set(String membershipType, long[] bits) {
+            if (anyTypeBit >= 0) {
+                bits[anyTypeBit >>> 6] |= 1L << anyTypeBit;
+            }
+            if (MembershipEntry.ANY_TYPE.equals(membershipType)) {
+                for (int bit : typeBits.values()) {
+                    bits[bit >>> 6] |= 1L << bit;
+                }
+            } else {
+                Integer bit = typeBits.get(membershipType);
+                if (bit != null) {
+                    bits[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+    }
+
+    // Non-empty words of bitset with their indexes
+    private static class Mask {
+        private final int[] indexes;
+        private final long[] bits;
+
+        private Mask(int size) {
+            indexes = new int[size];
+            bits = new long[size];
+        }
+
+        private boolean isEmpty() {
+            return indexes.length == 0;
+        }
+
+        private boolean containsAll(long[] set) {
+            for (int i = 0; i < indexes.length; i++) {
+                if ((set[indexes[i]] & bits[i]) != bits[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean intersects(long[] set) {
+            for (int i = 0; i < indexes.length; i++) {
+                if ((set[indexes[i]] & bits[i]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+
+/**
+ * {@link ReplicationChannel} between nodes running in the same JVM. Nodes with the same cluster name (value-param
+ * clusterName) receive updates of each other synchronously. It can be used to test replication or to share registry between
+ * more portal containers of one server.
+ *
+ * @version $Revision$
+ */
+public class InProcessReplicationChannel implements ReplicationChannel {
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, Receiver>> clusters = new ConcurrentHashMap<String, ConcurrentMap<String, Receiver>>();
+
+    private final ConcurrentMap<String, Receiver> nodes;
+
+    public InProcessReplicationChannel(InitParams params) {
+        this(getClusterName(params));
+    }
+
+    public InProcessReplicationChannel(String clusterName) {
+        ConcurrentMap<String, Receiver> newNodes = new ConcurrentHashMap<String, Receiver>();
+        ConcurrentMap<String, Receiver> existingNodes = clusters.putIfAbsent(clusterName, newNodes);
+        this.nodes = existingNodes == null ? newNodes : existingNodes;
+    }
+
+    private static String getClusterName(InitParams params) {
+        ValueParam param = params.getValueParam("clusterName");
+        return param == null ? "default" : param.getValue().trim();
+    }
+
+    public void connect(String nodeId, Receiver receiver) {
+        nodes.put(nodeId, receiver);
+    }
+
+    public void send(String nodeId, List<RegistryUpdate> updates) {
+        for (Map.Entry<String, Receiver> node : nodes.entrySet()) {
+            if (!node.getKey().equals(nodeId)) {
+                node.getValue().receive(updates);
+            }
+        }
+    }
+
+    public void disconnect(String nodeId) {
+        nodes.remove(nodeId);
+    }
+
+}
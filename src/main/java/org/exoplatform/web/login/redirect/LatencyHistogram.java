@@ -0,0 +1,130 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with logarithmic buckets. Bucket i contains values from 2^(i-1) to 2^i - 1,
+ * so percentiles are reported as upper bound of their bucket. Recording of value doesn't allocate any object.<br />
+ * Buckets are striped like {@link StripedCounter}: each stripe has its own row of buckets separated by padding, so threads
+ * recording concurrently don't write to the same cache line.
+ *
+ * @version $Revision$
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    // Distance between rows of buckets of two stripes
+    private static final int ROW = BUCKETS + StripedCounter.PADDING;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(StripedCounter.STRIPES * ROW);
+    private final StripedCounter totalTime = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        buckets.getAndIncrement(StripedCounter.stripe() * ROW + BUCKETS - Long.numberOfLeadingZeros(nanos));
+        totalTime.add(nanos);
+
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(stripe * ROW + i);
+            }
+        }
+        return count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : totalTime.sum() / count;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 1
+     * @return upper bound of bucket, which contains given percentile of recorded values
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long bucket = buckets.get(stripe * ROW + i);
+                counts[i] += bucket;
+                count += bucket;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(percentile * count);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return i == 0 ? 0 : Math.min((1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        totalTime.reset();
+        max.set(0);
+    }
+
+    /**
+     * @return summary of histogram in microseconds
+     */
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + micros(getMean()) + "us, p50=" + micros(getPercentile(0.5)) + "us, p99="
+                + micros(getPercentile(0.99)) + "us, p999=" + micros(getPercentile(0.999)) + "us, max=" + micros(getMax()) + "us";
+    }
+
+    private static String micros(long nanos) {
+        return String.valueOf(nanos / 1000.0);
+    }
+
+}
@@ -0,0 +1,117 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import org.exoplatform.container.xml.InitParams;
+
+/**
+ * Default {@link SessionUserRegistry}, which keeps entries in memory of current node. Sessions are kept in
+ * {@link LoggedUsersRegistry} and logout URLs in {@link LogoutTargetCache}. Sizes are configured by value-params
+ * registryMaxSize, registryDefaultTTL, registrySweepInterval and logoutTargetCacheSize.
+ *
+ * @version $Revision$
+ */
+public class LocalSessionUserRegistry implements SessionUserRegistry {
+
+    private final LoggedUsersRegistry loggedUsers;
+    private final LogoutTargetCache logoutTargets;
+
+    public LocalSessionUserRegistry(InitParams params) {
+        this(new LoggedUsersRegistry(LoginRedirectService.getIntParam(params, "registryMaxSize", 100000),
+                LoginRedirectService.getIntParam(params, "registryDefaultTTL", 24 * 60 * 60) * 1000L,
+                LoginRedirectService.getIntParam(params, "registrySweepInterval", 60) * 1000L),
+                new LogoutTargetCache(LoginRedirectService.getIntParam(params, "logoutTargetCacheSize", 100000)));
+    }
+
+    public LocalSessionUserRegistry(LoggedUsersRegistry loggedUsers, LogoutTargetCache logoutTargets) {
+        this.loggedUsers = loggedUsers;
+        this.logoutTargets = logoutTargets;
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    public String getUser(String sessionId) {
+        return loggedUsers.get(sessionId);
+    }
+
+    public void putUser(String sessionId, String userName, long sessionTimeout) {
+        loggedUsers.put(sessionId, userName, sessionTimeout);
+    }
+
+    public String removeUser(String sessionId) {
+        return loggedUsers.remove(sessionId);
+    }
+
+    public void sessionDestroyed(String sessionId) {
+        loggedUsers.sessionDestroyed(sessionId);
+    }
+
+    public void putLogoutURL(String userName, String logoutURL) {
+        logoutTargets.put(userName, logoutURL);
+    }
+
+    public String removeLogoutURL(String userName) {
+        return logoutTargets.remove(userName);
+    }
+
+    public int getSessionCount() {
+        return loggedUsers.size();
+    }
+
+    public int getLogoutURLCount() {
+        return logoutTargets.size();
+    }
+
+    public long getDestroyedEvictions() {
+        return loggedUsers.getDestroyedEvictions();
+    }
+
+    public long getExpiredEvictions() {
+        return loggedUsers.getExpiredEvictions();
+    }
+
+    public long getOverflowEvictions() {
+        return loggedUsers.getOverflowEvictions();
+    }
+
+    public void clear() {
+        loggedUsers.clear();
+        logoutTargets.clear();
+    }
+
+    /**
+     * @return registry of sessions, which can be used for monitoring of its size and evictions
+     */
+    public LoggedUsersRegistry getLoggedUsersRegistry() {
+        return loggedUsers;
+    }
+
+    public LogoutTargetCache getLogoutTargetCache() {
+        return logoutTargets;
+    }
+
+}
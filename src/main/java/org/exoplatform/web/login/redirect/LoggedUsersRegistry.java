@@ -0,0 +1,227 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded registry of logged users. Key is HTTP session ID and value is name of user logged in this session.<br />
+ * Entries are primarily removed by {@link LoginRedirectSessionListener} when HTTP session is destroyed. As fallback for
+ * containers where listener is not configured, entries which were not accessed for longer than lifetime of their session
+ * are removed by periodic sweep and oldest entries are removed when registry exceeds its maximal size.
+ *
+ * @version $Revision$
+ */
+public class LoggedUsersRegistry {
+
+    // Last access time of entry is updated at most once per this interval to avoid writes on every request
+    private static final long TOUCH_GRANULARITY = 1000;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final int maxSize;
+    private final long defaultTTL;
+    private final long sweepInterval;
+
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+    private final AtomicBoolean sweepInProgress = new AtomicBoolean(false);
+
+    private final AtomicLong destroyedEvictions = new AtomicLong();
+    private final AtomicLong expiredEvictions = new AtomicLong();
+    private final AtomicLong overflowEvictions = new AtomicLong();
+
+    /**
+     * @param maxSize maximal number of entries in registry
+     * @param defaultTTL time in milliseconds after which is not accessed entry removed, if its session never expires
+     * @param sweepInterval minimal time in milliseconds between two sweeps of expired entries
+     */
+    public LoggedUsersRegistry(int maxSize, long defaultTTL, long sweepInterval) {
+        this.maxSize = maxSize;
+        this.defaultTTL = defaultTTL;
+        this.sweepInterval = sweepInterval;
+    }
+
+    /**
+     * @param sessionId ID of HTTP session
+     * @return name of user logged in given session or null if we don't know about any user
+     */
+    public String get(String sessionId) {
+        Entry entry = entries.get(sessionId);
+        if (entry == null) {
+            return null;
+        }
+
+        entry.touch(System.currentTimeMillis());
+        return entry.userName;
+    }
+
+    /**
+     * Register user for given session.
+     *
+     * @param sessionId ID of HTTP session
+     * @param userName name of logged user
+     * @param sessionTimeout max inactive interval of session in milliseconds. Default TTL is used if it's not positive.
+     */
+    public void put(String sessionId, String userName, long sessionTimeout) {
+        long now = System.currentTimeMillis();
+        long ttl = sessionTimeout > 0 ? sessionTimeout + sweepInterval : defaultTTL;
+        entries.put(sessionId, new Entry(userName, ttl, now));
+
+        if (entries.size() > maxSize || now - lastSweep.get() >= sweepInterval) {
+            sweep(now);
+        }
+    }
+
+    /**
+     * Remove entry of session after logout.
+     *
+     * @param sessionId ID of HTTP session
+     * @return name of user logged in given session or null if we don't know about any user
+     */
+    public String remove(String sessionId) {
+        Entry entry = entries.remove(sessionId);
+        return entry == null ? null : entry.userName;
+    }
+
+    /**
+     * Remove entry of session, which was destroyed by servlet container.
+     *
+     * @param sessionId ID of HTTP session
+     */
+    public void sessionDestroyed(String sessionId) {
+        if (entries.remove(sessionId) != null) {
+            destroyedEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove expired entries and oldest entries if registry exceeds its maximal size. Only one thread is sweeping
+     * the registry at a time, other threads don't wait for it.
+     */
+    public void sweep(long now) {
+        if (!sweepInProgress.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            lastSweep.set(now);
+
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                if (entry.isExpired(now) && entries.remove(mapEntry.getKey(), entry)) {
+                    expiredEvictions.incrementAndGet();
+                }
+            }
+
+            int overflow = entries.size() - maxSize;
+            if (overflow > 0) {
+                // Evict some more entries, so that next logins don't need to sort the registry again
+                overflow += maxSize / 10;
+
+                // Access times are copied, because they can be changed by other threads during sorting
+                List<Candidate> oldest = new ArrayList<Candidate>(entries.size());
+                for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                    oldest.add(new Candidate(mapEntry.getKey(), mapEntry.getValue()));
+                }
+                Collections.sort(oldest);
+                for (int i = 0; i < overflow && i < oldest.size(); i++) {
+                    Candidate candidate = oldest.get(i);
+                    if (entries.remove(candidate.sessionId, candidate.entry)) {
+                        overflowEvictions.incrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            sweepInProgress.set(false);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getDestroyedEvictions() {
+        return destroyedEvictions.get();
+    }
+
+    public long getExpiredEvictions() {
+        return expiredEvictions.get();
+    }
+
+    public long getOverflowEvictions() {
+        return overflowEvictions.get();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static class Entry {
+        private final String userName;
+        private final long ttl;
+        private volatile long lastAccess;
+
+        private Entry(String userName, long ttl, long now) {
+            this.userName = userName;
+            this.ttl = ttl;
+            this.lastAccess = now;
+        }
+
+        private void touch(long now) {
+            if (now - lastAccess > TOUCH_GRANULARITY) {
+                lastAccess = now;
+            }
+        }
+
+        private boolean isExpired(long now) {
+            return now - lastAccess > ttl;
+        }
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final String sessionId;
+        private final Entry entry;
+        private final long lastAccess;
+
+        private Candidate(String sessionId, Entry entry) {
+            this.sessionId = sessionId;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+
+        public int compareTo(Candidate other) {
+            return lastAccess < other.lastAccess ? -1 : (lastAccess == other.lastAccess ? 0 : 1);
+        }
+    }
+
+}
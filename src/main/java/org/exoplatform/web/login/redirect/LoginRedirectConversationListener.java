@@ -0,0 +1,76 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.listener.Listener;
+import org.exoplatform.services.security.ConversationRegistry;
+import org.exoplatform.services.security.ConversationState;
+
+/**
+ * Listener of event "exo.core.security.ConversationRegistry.register", which is broadcasted by portal when user is
+ * authenticated and his {@link ConversationState} is bound to HTTP session. Listener marks the state as "redirect pending",
+ * so that {@link LoginRedirectFilter} with init parameter loginDetection=event can detect login by reading this flag
+ * instead of comparing remote user with {@link SessionUserRegistry} on every request.
+ *
+ * @version $Revision$
+ */
+public class LoginRedirectConversationListener extends Listener<ConversationRegistry, ConversationState> {
+
+    /**
+     * Name of attribute of {@link ConversationState} with flag of pending redirect.
+     */
+    public static final String REDIRECT_PENDING_ATTRIBUTE = LoginRedirectConversationListener.class.getName() + ".redirectPending";
+
+    @Override
+    public void onEvent(Event<ConversationRegistry, ConversationState> event) throws Exception {
+        markLogin(event.getData());
+    }
+
+    /**
+     * Mark state of newly authenticated user as "redirect pending".
+     *
+     * @param state conversation state
+     */
+    public static void markLogin(ConversationState state) {
+        state.setAttribute(REDIRECT_PENDING_ATTRIBUTE, new AtomicBoolean(true));
+    }
+
+    /**
+     * Consume flag of pending redirect. When more requests of the same user are processed concurrently, only one of them
+     * consumes the flag.
+     *
+     * @param state conversation state of current request or null
+     * @return true if login of user was not processed yet
+     */
+    public static boolean consumeLogin(ConversationState state) {
+        if (state == null) {
+            return false;
+        }
+        AtomicBoolean pending = (AtomicBoolean) state.getAttribute(REDIRECT_PENDING_ATTRIBUTE);
+        return pending != null && pending.get() && pending.compareAndSet(true, false);
+    }
+
+}
@@ -23,22 +23,28 @@
 package org.exoplatform.web.login.redirect;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.exoplatform.web.login.LoginServlet;
 import org.exoplatform.web.login.LogoutControl;
 import org.exoplatform.web.security.security.AbstractTokenService;
 
+import org.exoplatform.component.RequestLifeCycle;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.web.AbstractFilter;
+import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.web.security.security.CookieTokenService;
 import org.gatein.common.logging.Logger;
 import org.gatein.common.logging.LoggerFactory;
@@ -55,51 +61,276 @@ import org.gatein.wci.ServletContainerFactory;
 public class LoginRedirectFilter extends AbstractFilter {
     private static final Logger log = LoggerFactory.getLogger(LoginRedirectFilter.class);
 
-    // We need this helper registry because userId can't be obtained from HTTP session when logout is detected because session is already invalidated.
-    // Key is sessionId, Value is userId (HTTP session is invalidated during logout and all attributes are cleaned but session ID is still the same)
-    private ConcurrentMap<String, String> loggedUsersRegistry = new ConcurrentHashMap<String, String>();
+    // Used when LoginRedirectService is not available
+    private static final RedirectMetrics NO_METRICS = new RedirectMetrics() {
+        public void loginDetected() {
+        }
+
+        public void logoutDetected() {
+        }
+
+        public void redirectIssued(RedirectDecision decision) {
+        }
+
+        public void identityNotFound() {
+        }
+
+        public void decisionTime(long nanos) {
+        }
+
+        public void logoutTime(long nanos) {
+        }
+    };
+
+    // Minimal time between lookups of LoginRedirectService, which was not available in portal container
+    private static final long LOOKUP_RETRY_INTERVAL = 1000;
+
+    // Init parameters of previous versions, which are now value-params of LoginRedirectService
+    private static final String[] MOVED_REGISTRY_PARAMS = { "registryDefaultTTL", "registryMaxSize", "registrySweepInterval" };
+
+    // Components of portal container are resolved once and dropped when LoginRedirectService is stopped with its container
+    private volatile LoginRedirectService redirectService;
+    private volatile AbstractTokenService tokenService;
+
+    // Time when LoginRedirectService can be looked up again after it was not found
+    private volatile long lookupRetryTime;
+
+    private final LoginRedirectServiceListener serviceListener = new LoginRedirectServiceListener() {
+        public void serviceStopped(LoginRedirectService service) {
+            synchronized (LoginRedirectFilter.this) {
+                if (redirectService == service) {
+                    redirectService = null;
+                    tokenService = null;
+                    servletContext.removeAttribute(SessionUserRegistry.ATTRIBUTE_NAME);
+                }
+            }
+        }
+    };
+
+    // Requests for static resources (skins, scripts, images), which are never subject of login or logout redirection
+    private PathExclusionMatcher exclusionMatcher;
+
+    // Login is detected by flag set by LoginRedirectConversationListener instead of comparison with SessionUserRegistry
+    private boolean eventLoginDetection;
+
+    // Asynchronous revocation of remember-me tokens. It's null if tokens are deleted synchronously during logout.
+    private TokenRevocationQueue tokenRevocationQueue;
+
+    // Components resolved by request thread for worker of revocation queue, which runs outside of portal container
+    private volatile ExoContainer revocationContainer;
+    private volatile AbstractTokenService revocationTokenService;
+
+    // Context where SessionUserRegistry is published for LoginRedirectSessionListener
+    private ServletContext servletContext;
+
+    // Requests processed without LoginRedirectService are reported as summary once per interval
+    private AggregatedWarning serviceWarning;
+
+    @Override
+    protected void afterInit(FilterConfig config) throws ServletException {
+        exclusionMatcher = PathExclusionMatcher.parse(config.getInitParameter("excludedPathPrefixes"),
+                config.getInitParameter("excludedExtensions"));
+
+        String loginDetection = config.getInitParameter("loginDetection");
+        if (loginDetection == null || "registry".equals(loginDetection.trim())) {
+            eventLoginDetection = false;
+        } else if ("event".equals(loginDetection.trim())) {
+            eventLoginDetection = true;
+        } else {
+            throw new ServletException("Init parameter loginDetection of LoginRedirectFilter must be registry or event: "
+                    + loginDetection);
+        }
+
+        servletContext = config.getServletContext();
+
+        for (String name : MOVED_REGISTRY_PARAMS) {
+            if (config.getInitParameter(name) != null) {
+                log.warn("Init parameter " + name + " of LoginRedirectFilter is ignored. Registry of logged users is part of "
+                        + "LoginRedirectService now, so " + name + " must be configured as its value-param.");
+            }
+        }
+
+        serviceWarning = new AggregatedWarning(log,
+                "requests processed while LoginRedirectService was not available in portal container. Redirect was disabled for them",
+                "filter", getIntInitParameter(config, "warningInterval", 10) * 1000L);
+
+        if ("true".equals(config.getInitParameter("asyncTokenRevocation"))) {
+            // Worker runs outside of portal container, while synchronous fallback runs in thread of logout request
+            tokenRevocationQueue = new TokenRevocationQueue(getIntInitParameter(config, "tokenRevocationQueueSize", 1000),
+                    getIntInitParameter(config, "tokenRevocationBatchSize", 50), TokenRevocationQueue.DEFAULT_RETRY_DELAY,
+                    new TokenRevoker() {
+                        public void revoke(String token) {
+                            deleteRevokedToken(token);
+                        }
+                    }, new TokenRevoker() {
+                        public void revoke(String token) {
+                            deleteToken(token);
+                        }
+                    });
+            tokenRevocationQueue.start();
+        }
+    }
+
+    private int getIntInitParameter(FilterConfig config, String name, int defaultValue) throws ServletException {
+        String value = config.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException nfe) {
+            throw new ServletException("Init parameter " + name + " of LoginRedirectFilter is not a number: " + value, nfe);
+        }
+    }
 
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
             ServletException {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
 
+        // Revoked token may be still present in token store, so it can't reach login servlet or any other path
+        if (tokenRevocationQueue != null && tokenRevocationQueue.hasTombstones()) {
+            httpRequest = hideRevokedToken(httpRequest);
+            request = httpRequest;
+        }
+
+        // Fast path for static resources and anonymous traffic. We don't want to create HTTP session for them.
+        if (exclusionMatcher.isExcluded(httpRequest.getRequestURI(), httpRequest.getContextPath().length())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
         String newUserName = httpRequest.getRemoteUser();
-        String oldUserName = loggedUsersRegistry.get(httpRequest.getSession().getId());
+        if (eventLoginDetection) {
+            // Login was marked by LoginRedirectConversationListener when user was authenticated
+            if (newUserName != null && LoginRedirectConversationListener.consumeLogin(ConversationState.getCurrent())) {
+                SessionUserRegistry sessionUsers = getSessionUserRegistry();
+                if (sessionUsers != null
+                        && redirectAfterLogin(sessionUsers, httpRequest, httpRequest.getSession(), newUserName, httpResponse)) {
+                    return;
+                }
+            } else if (isLogoutRequest(httpRequest)) {
+                SessionUserRegistry sessionUsers = getSessionUserRegistry();
+                if (sessionUsers != null) {
+                    HttpSession session = httpRequest.getSession(false);
+                    String oldUserName = session == null ? null : sessionUsers.getUser(session.getId());
+                    if (redirectAfterLogout(sessionUsers, httpRequest, httpResponse, session, oldUserName)) {
+                        return;
+                    }
+                }
+            }
+            chain.doFilter(request, response);
+            return;
+        }
 
-        if ((newUserName != null) && ((oldUserName == null) || (!oldUserName.equals(newUserName)))) {
-            log.debug("Detected login of user " + newUserName);
+        if (newUserName == null && !isLogoutRequest(httpRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
 
-            // save new user into our local map.
-            loggedUsersRegistry.put(httpRequest.getSession().getId(), newUserName);
+        SessionUserRegistry sessionUsers = getSessionUserRegistry();
+        if (sessionUsers == null) {
+            chain.doFilter(request, response);
+            return;
+        }
 
-            // Get location of user according to his roles.
-            String location = getLocationAfterLogin(newUserName);
+        HttpSession session = httpRequest.getSession(newUserName != null);
+        String oldUserName = session == null ? null : sessionUsers.getUser(session.getId());
 
-            // Redirect user to his new location if location is not null. Otherwise ignore redirection.
-            if (location != null) {
-                location = httpResponse.encodeRedirectURL(location);
-                httpResponse.sendRedirect(location);
+        if ((newUserName != null) && ((oldUserName == null) || (!oldUserName.equals(newUserName)))) {
+            if (redirectAfterLogin(sessionUsers, httpRequest, session, newUserName, httpResponse)) {
                 return;
             }
         } else if (isLogoutRequest(httpRequest)) {
+            if (redirectAfterLogout(sessionUsers, httpRequest, httpResponse, session, oldUserName)) {
+                return;
+            }
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    // Process detected login. Return true if user was redirected.
+    private boolean redirectAfterLogin(SessionUserRegistry sessionUsers, HttpServletRequest httpRequest, HttpSession session,
+            String newUserName, HttpServletResponse httpResponse) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Detected login of user " + newUserName);
+        }
+        getMetrics().loginDetected();
+
+        // Get location of user according to his roles.
+        String location = getLocationAfterLogin(newUserName, httpRequest.getRequestURI());
+
+        // Identity of user is not registered yet. Login stays unprocessed, so next request of the user detects it again.
+        if (location == null && deferLogin(session)) {
+            if (eventLoginDetection) {
+                LoginRedirectConversationListener.markLogin(ConversationState.getCurrent());
+            }
+            return false;
+        }
+
+        // save new user into registry.
+        sessionUsers.putUser(session.getId(), newUserName, session.getMaxInactiveInterval() * 1000L);
+
+        // Redirect user to his new location if location is not null. Otherwise ignore redirection.
+        if (location != null) {
+            loginRedirected(session);
+            location = encodeRedirectURL(httpRequest, httpResponse, location);
+            httpResponse.sendRedirect(location);
+            return true;
+        }
+        return false;
+    }
+
+    // Return true if login should be retried by next request, because identity of user may be registered meanwhile
+    private boolean deferLogin(HttpSession session) {
+        LoginRedirectService loginService = getRedirectService();
+        return loginService != null && loginService.getPendingIdentities().defer(session, System.currentTimeMillis());
+    }
+
+    private void loginRedirected(HttpSession session) {
+        LoginRedirectService loginService = getRedirectService();
+        if (loginService != null) {
+            loginService.getPendingIdentities().loginRedirected(session);
+        }
+    }
+
+    // Process detected logout. Return true if user was redirected.
+    private boolean redirectAfterLogout(SessionUserRegistry sessionUsers, HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse, HttpSession session, String oldUserName) throws IOException, ServletException {
+        if (log.isDebugEnabled()) {
             log.debug("Detected logout request of user " + oldUserName);
-            String sessionId = httpRequest.getSession().getId();
+        }
+        long start = System.nanoTime();
+        RedirectMetrics metrics = getMetrics();
+        metrics.logoutDetected();
 
-            // Remove attribute from local map.
-            loggedUsersRegistry.remove(sessionId);
+        // Remove entry from registry.
+        if (session != null) {
+            sessionUsers.removeUser(session.getId());
+        }
 
-            // TODO: find better way to fix it than logout user directly from filter
-            logout(httpRequest, httpResponse);
+        // TODO: find better way to fix it than logout user directly from filter
+        logout(httpRequest, httpResponse);
 
-            // Redirect user to his new location after logout if location is not null. Otherwise ignore redirection.
-            String location = getLocationAfterLogout(oldUserName);
-            location = httpResponse.encodeRedirectURL(location);
+        // Redirect user to his new location after logout if location is not null. Otherwise ignore redirection and let portal
+        // handle logout action of already logged out user (it happens only if LoginRedirectService is not available).
+        String location = getLocationAfterLogout(oldUserName, httpRequest.getRequestURI());
+        if (location != null) {
+            location = encodeRedirectURL(httpRequest, httpResponse, location);
             httpResponse.sendRedirect(location);
-            return;
         }
+        metrics.logoutTime(System.nanoTime() - start);
+        return location != null;
+    }
 
-        chain.doFilter(request, response);
+    // URL rewriting is not needed if client sends ID of session in cookie
+    private String encodeRedirectURL(HttpServletRequest httpRequest, HttpServletResponse httpResponse, String location) {
+        if (httpRequest.isRequestedSessionIdFromCookie()) {
+            return location;
+        }
+        return httpResponse.encodeRedirectURL(location);
     }
 
     // Return true if logout request is in progress
@@ -117,32 +348,173 @@ public class LoginRedirectFilter extends AbstractFilter {
      * Compute location for logged user according to his roles. Filter will then redirect user to new location.
      *
      * @param loggedUser
+     * @param requestPath URI of request
      * @return new location where logged user will be redirected
      */
-    private String getLocationAfterLogin(String loggedUser) {
-        LoginRedirectService loginService = (LoginRedirectService) getContainer().getComponentInstanceOfType(LoginRedirectService.class);
-        return loginService.getLoginRedirectURL(loggedUser);
+    private String getLocationAfterLogin(String loggedUser, String requestPath) {
+        LoginRedirectService loginService = getRedirectService();
+        return loginService == null ? null : loginService.getLoginRedirectURL(loggedUser, requestPath);
     }
 
     /**
      * Compute location for logged outed user according to his roles. Filter will then redirect user to new location.
      *
      * @param loggedUser
+     * @param requestPath URI of request
      * @return new location where logged user will be redirected
      */
-    private String getLocationAfterLogout(String loggedUser) {
-        LoginRedirectService loginService = (LoginRedirectService) getContainer().getComponentInstanceOfType(LoginRedirectService.class);
-        return loginService.getLogoutRedirectURL(loggedUser);
+    private String getLocationAfterLogout(String loggedUser, String requestPath) {
+        LoginRedirectService loginService = getRedirectService();
+        return loginService == null ? null : loginService.getLogoutRedirectURL(loggedUser, requestPath);
+    }
+
+    /**
+     * Return LoginRedirectService of portal container. Service is resolved from container during first call and then it's
+     * cached until the service is stopped. If service is not available, it's looked up again at most once per second.
+     *
+     * @return service or null if it's not available in portal container
+     */
+    protected LoginRedirectService getRedirectService() {
+        LoginRedirectService service = redirectService;
+        if (service == null) {
+            if (System.currentTimeMillis() < lookupRetryTime) {
+                serviceWarning.warn(config.getFilterName());
+                return null;
+            }
+            synchronized (this) {
+                service = redirectService;
+                if (service == null) {
+                    service = lookupRedirectService();
+                    if (service == null) {
+                        lookupRetryTime = System.currentTimeMillis() + LOOKUP_RETRY_INTERVAL;
+                        serviceWarning.warn(config.getFilterName());
+                        return null;
+                    }
+                    service.addListener(serviceListener);
+                    redirectService = service;
+
+                    // Publish registry for LoginRedirectSessionListener
+                    servletContext.setAttribute(SessionUserRegistry.ATTRIBUTE_NAME, service.getSessionUserRegistry());
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * @return registry of users logged in HTTP sessions owned by LoginRedirectService or null if service is not available
+     */
+    protected SessionUserRegistry getSessionUserRegistry() {
+        LoginRedirectService service = getRedirectService();
+        return service == null ? null : service.getSessionUserRegistry();
+    }
+
+    private RedirectMetrics getMetrics() {
+        LoginRedirectService service = getRedirectService();
+        return service == null ? NO_METRICS : service.getMetrics();
+    }
+
+    protected LoginRedirectService lookupRedirectService() {
+        return (LoginRedirectService) getContainer().getComponentInstanceOfType(LoginRedirectService.class);
+    }
+
+    /**
+     * Return token service of portal container. Service is resolved during first call and then it's cached until
+     * LoginRedirectService is stopped.
+     *
+     * @return token service
+     */
+    protected AbstractTokenService getTokenService() {
+        AbstractTokenService service = tokenService;
+        if (service == null) {
+            synchronized (this) {
+                service = tokenService;
+                if (service == null) {
+                    service = AbstractTokenService.getInstance(CookieTokenService.class);
+
+                    // Cache token service only if we are notified about container restart
+                    if (getRedirectService() != null) {
+                        tokenService = service;
+                    }
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * Delete remember-me token from token service of portal container.
+     *
+     * @param token value of token cookie
+     */
+    protected void deleteToken(String token) {
+        getTokenService().deleteToken(token);
+    }
+
+    /**
+     * Delete asynchronously revoked token in worker thread of revocation queue. Portal container and token service resolved
+     * during logout request are used. Container is made current and request life cycle is started for the deletion, so token
+     * store is used the same way as during request.
+     *
+     * @param token value of token cookie
+     * @throws IllegalStateException if portal container or token service wasn't resolved yet, deletion is retried later
+     */
+    protected void deleteRevokedToken(String token) {
+        ExoContainer container = revocationContainer;
+        AbstractTokenService service = revocationTokenService;
+        if (container == null || service == null) {
+            throw new IllegalStateException("Portal container of LoginRedirectFilter is not available");
+        }
+
+        ExoContainerContext.setCurrentContainer(container);
+        RequestLifeCycle.begin(container);
+        try {
+            service.deleteToken(token);
+        } finally {
+            RequestLifeCycle.end();
+            ExoContainerContext.setCurrentContainer(null);
+        }
     }
 
     public void destroy() {
+        synchronized (this) {
+            if (redirectService != null) {
+                redirectService.removeListener(serviceListener);
+                redirectService = null;
+            }
+            tokenService = null;
+        }
+
+        if (tokenRevocationQueue != null) {
+            tokenRevocationQueue.stop();
+        }
+
+        if (servletContext != null) {
+            servletContext.removeAttribute(SessionUserRegistry.ATTRIBUTE_NAME);
+        }
+
+        if (serviceWarning != null) {
+            serviceWarning.flush();
+        }
+    }
+
+    /**
+     * @return queue of asynchronously revoked tokens or null if tokens are revoked synchronously
+     */
+    public TokenRevocationQueue getTokenRevocationQueue() {
+        return tokenRevocationQueue;
     }
 
     private void logout(HttpServletRequest request, HttpServletResponse response) throws ServletException {
         String token = getTokenCookie(request);
         if (token != null) {
-            AbstractTokenService tokenService = AbstractTokenService.getInstance(CookieTokenService.class);
-            tokenService.deleteToken(token);
+            if (tokenRevocationQueue != null && !isClustered()) {
+                revocationContainer = getContainer();
+                revocationTokenService = getTokenService();
+                tokenRevocationQueue.revoke(token);
+            } else {
+                deleteToken(token);
+            }
         }
 
         Cookie cookie = new Cookie(LoginServlet.COOKIE_NAME, "");
@@ -150,8 +522,24 @@ public class LoginRedirectFilter extends AbstractFilter {
         cookie.setMaxAge(0);
         response.addCookie(cookie);
 
-        ServletContainerFactory.getServletContainer().logout(request, response);
+        logoutFromContainer(request, response);
+    }
 
+    // Tombstones of revocation queue are local to this node, so other nodes of cluster would accept revoked token until it's
+    // deleted. Registry replicated to other nodes means that the portal is clustered.
+    private boolean isClustered() {
+        return getSessionUserRegistry() instanceof ReplicatedSessionUserRegistry;
+    }
+
+    /**
+     * Logout user from servlet container.
+     *
+     * @param request
+     * @param response
+     * @throws ServletException
+     */
+    protected void logoutFromContainer(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+        ServletContainerFactory.getServletContainer().logout(request, response);
     }
 
     private String getTokenCookie(HttpServletRequest req) {
@@ -166,5 +554,26 @@ public class LoginRedirectFilter extends AbstractFilter {
         return null;
     }
 
+    // Return request without token cookie if the token was revoked
+    private HttpServletRequest hideRevokedToken(HttpServletRequest req) {
+        Cookie[] cookies = req.getCookies();
+        if (cookies == null) {
+            return req;
+        }
+        for (int i = 0; i < cookies.length; i++) {
+            if (LoginServlet.COOKIE_NAME.equals(cookies[i].getName()) && tokenRevocationQueue.isRevoked(cookies[i].getValue())) {
+                final Cookie[] visibleCookies = new Cookie[cookies.length - 1];
+                System.arraycopy(cookies, 0, visibleCookies, 0, i);
+                System.arraycopy(cookies, i + 1, visibleCookies, i, cookies.length - i - 1);
+                return new HttpServletRequestWrapper(req) {
+                    @Override
+                    public Cookie[] getCookies() {
+                        return visibleCookies.length == 0 ? null : visibleCookies;
+                    }
+                };
+            }
+        }
+        return req;
+    }
 
 }
@@ -22,122 +22,572 @@
  ******************************************************************************/
 package org.exoplatform.web.login.redirect;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Impact;
+import org.exoplatform.management.annotations.ImpactType;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.management.rest.annotations.RESTEndpoint;
+import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.services.security.Identity;
 import org.exoplatform.services.security.IdentityRegistry;
-import org.exoplatform.services.security.MembershipEntry;
 import org.gatein.common.logging.Logger;
 import org.gatein.common.logging.LoggerFactory;
+import org.picocontainer.Startable;
 
 /**
  * This service contains mapping of groups and login/logout pages, so that it can decide where to redirect user
- * after his login or after his logout.
+ * after his login or after his logout.<br />
+ * Mappings can be reloaded at runtime from external mapping file (see {@link RedirectMappingConfigParser}), either by
+ * management operation or automatically when the file is changed.
  *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  * @version $Revision$
  */
-public class LoginRedirectService {
+@Managed
+@NameTemplate({@Property(key = "view", value = "portal"), @Property(key = "service", value = "loginredirect")})
+@ManagedDescription("Login redirect service")
+@RESTEndpoint(path = "loginredirect")
+public class LoginRedirectService implements Startable {
     private static final Logger log = LoggerFactory.getLogger(LoginRedirectService.class);
 
     private final String defaultLoginURL;
     private final String defaultLogoutURL;
-    private final Map<MembershipEntry, MappingParam> mappingConfiguration;
+
+    // Value of placeholder ${portal} in redirect URLs
+    private final String portalName;
     private final IdentityRegistry identityRegistry;
 
-    // We need this map because Identity of particular user can't be obtained from IdentityRegistry when logout is detected.
-    // Key is username and value is his identity.
-    private ConcurrentMap<String, Identity> localIdentityRegistry = new ConcurrentHashMap<String, Identity>();
+    // Identity of user can be registered after his first request is processed. Login is retried by next requests.
+    private final PendingIdentities pendingIdentities;
+
+    // Current configuration. It's replaced as a whole when mappings are reloaded, so lookups never block and never see
+    // partially updated configuration.
+    private volatile RedirectConfiguration configuration;
+
+    // Users logged in HTTP sessions and their logout URLs resolved during login. We need logout URLs because Identity of
+    // particular user can't be obtained from IdentityRegistry when logout is detected. Whole Identity is not kept to save memory.
+    private final SessionUserRegistry sessionUsers;
+
+    // Built-in statistics exposed by management view and metrics, which receive events (statistics and custom metrics)
+    private final RedirectStatistics statistics = new RedirectStatistics();
+    private final RedirectMetrics metrics;
+
+    // Missing identities are reported as summary once per interval instead of one line per request
+    private final AggregatedWarning loginIdentityWarning;
+    private final AggregatedWarning logoutIdentityWarning;
+
+    private final List<LoginRedirectServiceListener> listeners = new CopyOnWriteArrayList<LoginRedirectServiceListener>();
+
+    // External file with mappings, which can be reloaded at runtime. It's null if mappings are configured only by init params.
+    private final File mappingFile;
+    private final long mappingFileCheckInterval;
+    private volatile long mappingFileLastModified;
+
+    // Modification time of mapping file, which couldn't be loaded. Watcher doesn't try it again until the file is changed.
+    private volatile long mappingFileFailedModified;
+    private ScheduledExecutorService mappingFileWatcher;
 
     public LoginRedirectService(InitParams params, IdentityRegistry identityRegistry) {
         this.defaultLoginURL = params.getValueParam("defaultLoginURL").getValue();
         this.defaultLogoutURL = params.getValueParam("defaultLogoutURL").getValue();
+        ValueParam portalNameParam = params.getValueParam("portalName");
+        this.portalName = portalNameParam == null ? "portal" : portalNameParam.getValue().trim();
 
         RedirectMappingConfig config = (RedirectMappingConfig) params.getObjectParam("redirectMappings").getObject();
-        Map<MembershipEntry, MappingParam> mappingConfigurationPom = new LinkedHashMap<MembershipEntry, MappingParam>();
+        // Invalid mappings must not prevent startup of portal
+        this.configuration = compile(config, defaultLoginURL, defaultLogoutURL, true);
+
+        this.identityRegistry = identityRegistry;
+        this.pendingIdentities = new PendingIdentities(getIntParam(params, "identityWaitTimeout", 0));
+        this.sessionUsers = createSessionUserRegistry(params);
+
+        ValueParam mappingFileParam = params.getValueParam("mappingFile");
+        this.mappingFile = mappingFileParam == null ? null : new File(mappingFileParam.getValue().trim());
+        this.mappingFileCheckInterval = getIntParam(params, "mappingFileCheckInterval", 0) * 1000L;
 
-        for (MappingParam mappingParam : config.getRedirectMappings()) {
-            MembershipEntry membership = MembershipEntry.parse(mappingParam.getGroupName());
-            mappingConfigurationPom.put(membership, mappingParam);
+        long warningInterval = getIntParam(params, "warningInterval", 10) * 1000L;
+        this.loginIdentityWarning = new AggregatedWarning(log,
+                "identities missing in identity registry during login. Custom redirect after login was disabled for them",
+                "user", warningInterval);
+        this.logoutIdentityWarning = new AggregatedWarning(log,
+                "identities missing in identity registry during logout. Default logout URL was used for them", "user",
+                warningInterval);
+
+        ValueParam metricsClassParam = params.getValueParam("metricsClass");
+        this.metrics = metricsClassParam == null ? statistics : new CompositeMetrics(statistics,
+                createMetrics(metricsClassParam.getValue().trim()));
+    }
+
+    private static RedirectMetrics createMetrics(String className) {
+        try {
+            Class<?> metricsClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            return (RedirectMetrics) metricsClass.newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Can't create metrics of class " + className, e);
         }
+    }
 
-        mappingConfiguration = Collections.unmodifiableMap(mappingConfigurationPom);
-        this.identityRegistry = identityRegistry;
+    private static SessionUserRegistry createSessionUserRegistry(InitParams params) {
+        ValueParam param = params.getValueParam("sessionUserRegistry");
+        if (param == null) {
+            return new LocalSessionUserRegistry(params);
+        }
+
+        String className = param.getValue().trim();
+        try {
+            Class<?> registryClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            return (SessionUserRegistry) registryClass.getConstructor(InitParams.class).newInstance(params);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Can't create session user registry of class " + className, e);
+        }
+    }
+
+    public void start() {
+        sessionUsers.start();
+
+        if (mappingFile == null) {
+            return;
+        }
+
+        if (mappingFile.exists()) {
+            reloadMappings();
+        } else {
+            log.warn("Mapping file " + mappingFile.getAbsolutePath() + " doesn't exist. Mappings from init params will be used.");
+        }
+
+        if (mappingFileCheckInterval > 0) {
+            mappingFileWatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "LoginRedirectService mapping file watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            mappingFileWatcher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    long lastModified = mappingFile.lastModified();
+                    if (mappingFile.exists() && lastModified != mappingFileLastModified
+                            && lastModified != mappingFileFailedModified) {
+                        reloadMappings();
+                    }
+                }
+            }, mappingFileCheckInterval, mappingFileCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        if (mappingFileWatcher != null) {
+            mappingFileWatcher.shutdownNow();
+            mappingFileWatcher = null;
+        }
+
+        for (LoginRedirectServiceListener listener : listeners) {
+            try {
+                listener.serviceStopped(this);
+            } catch (RuntimeException e) {
+                log.error("Error during notification of listener " + listener, e);
+            }
+        }
+        listeners.clear();
+
+        sessionUsers.stop();
+
+        loginIdentityWarning.flush();
+        logoutIdentityWarning.flush();
+    }
+
+    public void addListener(LoginRedirectServiceListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LoginRedirectServiceListener listener) {
+        listeners.remove(listener);
+    }
+
+    static int getIntParam(InitParams params, String name, int defaultValue) {
+        ValueParam param = params.getValueParam(name);
+        if (param == null) {
+            return defaultValue;
+        }
+        return Integer.parseInt(param.getValue().trim());
     }
 
     /**
-     * Return the page where particular user should be redirected after his login.
+     * Reload mappings from external mapping file. New configuration is parsed and compiled in the calling thread and then
+     * published at once. If file can't be parsed, current configuration is kept.
+     *
+     * @return description of result
+     */
+    @Managed
+    @ManagedDescription("Reload redirect mappings from mapping file")
+    @Impact(ImpactType.WRITE)
+    public synchronized String reloadMappings() {
+        if (mappingFile == null) {
+            return "Mapping file is not configured";
+        }
+
+        long lastModified = mappingFile.lastModified();
+        try {
+            RedirectMappingConfig config = new RedirectMappingConfigParser().parse(mappingFile);
+            updateMappings(config);
+            mappingFileLastModified = lastModified;
+        } catch (Exception e) {
+            mappingFileFailedModified = lastModified;
+            log.error("Can't reload redirect mappings from file " + mappingFile.getAbsolutePath(), e);
+            return "Reload failed: " + e.getMessage();
+        }
+
+        String result = "Reloaded " + configuration.size() + " mappings from " + mappingFile.getAbsolutePath();
+        log.info(result);
+        return result;
+    }
+
+    /**
+     * Replace current mappings with given configuration. Default URLs of configuration are used if they are set, otherwise
+     * defaults from init params are used. Logout URLs of users resolved during their login are kept, so users logged in
+     * before reload are redirected according to previous mappings during their logout.
+     *
+     * @param config new mappings
+     */
+    public synchronized void updateMappings(RedirectMappingConfig config) {
+        String newDefaultLoginURL = config.getDefaultLoginURL() != null ? config.getDefaultLoginURL() : defaultLoginURL;
+        String newDefaultLogoutURL = config.getDefaultLogoutURL() != null ? config.getDefaultLogoutURL() : defaultLogoutURL;
+        configuration = compile(config, newDefaultLoginURL, newDefaultLogoutURL, false);
+        // Counters of removed mappings and rules would be kept forever
+        statistics.resetMappingRedirects();
+    }
+
+    // Reload fails on invalid mappings, so the last good configuration stays active
+    private RedirectConfiguration compile(RedirectMappingConfig config, String loginURL, String logoutURL, boolean skipInvalid) {
+        RedirectMappingCompiler compiler = new RedirectMappingCompiler();
+        compiler.setSkipInvalid(skipInvalid);
+        if (configuration != null) {
+            // Invalid default URL is replaced by default of previous configuration instead of portal's own redirect
+            RedirectDecision previous = configuration.getDefaultDecision();
+            compiler.setFallbackURLs(previous.getLoginURL(), previous.getLogoutURL());
+        }
+        RedirectConfiguration compiled = compiler.compile(config, loginURL, logoutURL);
+        for (String problem : compiler.getProblems()) {
+            log.warn(problem);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(compiler.getSummary());
+        }
+        return compiled;
+    }
+
+    /**
+     * Return the page where particular user should be redirected after his login. Only mappings without path are used.
      *
      * @param username
      * @return page to redirect
      */
     public String getLoginRedirectURL(String username) {
-        Identity identity = identityRegistry.getIdentity(username);
+        return getLoginRedirectURL(username, null);
+    }
+
+    /**
+     * Return the page where particular user should be redirected after his login.
+     *
+     * @param username
+     * @param requestPath URI of request, where login was detected. It's used to select mappings with path.
+     * @return page to redirect
+     */
+    public String getLoginRedirectURL(String username, String requestPath) {
+        Identity identity = findIdentity(username);
         if (identity == null) {
-            log.warn("Can't find identity for user " + username + " from identity registry. Custom redirect afer login will be disabled.");
+            metrics.identityNotFound();
+            loginIdentityWarning.warn(username);
             return null;
         }
 
-        // store Identity to local map for later use
-        localIdentityRegistry.put(username, identity);
+        long start = System.nanoTime();
+        RedirectDecision decision = configuration.resolve(identity.getMemberships(), requestPath);
+        String loginURL = decision.getLoginURL(username, portalName);
+        metrics.redirectIssued(decision);
+        metrics.decisionTime(System.nanoTime() - start);
 
-        for (MembershipEntry membership : mappingConfiguration.keySet()) {
-            if (identity.isMemberOf(membership)) {
-                String resultURL = mappingConfiguration.get(membership).getLoginURL();
+        // store logout URL to local cache for later use
+        sessionUsers.putLogoutURL(username, decision.getLogoutURL(username, portalName));
 
-                if (log.isDebugEnabled()) {
-                    log.debug("Redirecting user from group " + membership + " to page " + resultURL + ".");
-                }
-                return resultURL;
+        if (log.isDebugEnabled()) {
+            if (decision.isDefault()) {
+                log.debug("Redirecting user " + username + " to default page " + decision.getLoginURL());
+            } else {
+                log.debug("Redirecting user from group " + decision.getGroupName() + " to page " + decision.getLoginURL() + ".");
             }
         }
+        return loginURL;
+    }
 
-        if (log.isDebugEnabled()) {
-            log.debug("Redirecting user " + username + " to default page " + defaultLoginURL);
+    // Return identity from identity registry or from conversation state of current request
+    private Identity findIdentity(String username) {
+        Identity identity = identityRegistry.getIdentity(username);
+        if (identity == null) {
+            ConversationState state = ConversationState.getCurrent();
+            if (state != null && state.getIdentity() != null && username.equals(state.getIdentity().getUserId())) {
+                identity = state.getIdentity();
+            }
         }
-        return defaultLoginURL;
+        return identity;
     }
 
     /**
-     * Return the page where particular user should be redirected after his logout.
+     * @return logins, which are retried by later requests because identity of user was missing
+     */
+    public PendingIdentities getPendingIdentities() {
+        return pendingIdentities;
+    }
+
+    /**
+     * Return the page where particular user should be redirected after his logout. If logout URL was not resolved during
+     * login, only mappings without path are used.
      *
      * @param username
      * @return page to redirect
      */
     public String getLogoutRedirectURL(String username) {
-        Identity identity = localIdentityRegistry.get(username);
+        return getLogoutRedirectURL(username, null);
+    }
+
+    /**
+     * Return the page where particular user should be redirected after his logout.
+     *
+     * @param username
+     * @param requestPath URI of logout request. It's used to select mappings with path if logout URL was not resolved during
+     *            login.
+     * @return page to redirect
+     */
+    public String getLogoutRedirectURL(String username, String requestPath) {
+        // Logout request of user, which was not logged through our filter
+        if (username == null) {
+            return configuration.getDefaultDecision().getLogoutURL(null, portalName);
+        }
+
+        // User is logging out, so we don't need his entry anymore
+        String resultURL = sessionUsers.removeLogoutURL(username);
+        if (resultURL != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Redirecting user " + username + " to page " + resultURL + " resolved during his login.");
+            }
+            return resultURL;
+        }
+
+        RedirectConfiguration current = configuration;
 
         // Try portal identityRegistry for case it's not in local
+        Identity identity = findIdentity(username);
+
         if (identity == null) {
-            identity = identityRegistry.getIdentity(username);
+            metrics.identityNotFound();
+            logoutIdentityWarning.warn(username);
+            return current.getDefaultDecision().getLogoutURL(username, portalName);
         }
 
-        if (identity == null) {
-            log.warn("Can't find identity for user " + username + " in local registry.");
-            return defaultLogoutURL;
+        RedirectDecision decision = current.resolve(identity.getMemberships(), requestPath);
+        if (log.isDebugEnabled()) {
+            if (decision.isDefault()) {
+                log.debug("Redirecting user " + username + " to default page " + decision.getLogoutURL());
+            } else {
+                log.debug("Redirecting user from group " + decision.getGroupName() + " to page " + decision.getLogoutURL() + ".");
+            }
         }
+        return decision.getLogoutURL(username, portalName);
+    }
 
-        for (MembershipEntry membership : mappingConfiguration.keySet()) {
-            if (identity.isMemberOf(membership)) {
-                String resultURL = mappingConfiguration.get(membership).getLogoutURL();
+    /**
+     * @return number of users with logout URL resolved during their login
+     */
+    @Managed
+    @ManagedDescription("Number of users with logout URL resolved during their login")
+    public int getLogoutTargetCacheSize() {
+        return sessionUsers.getLogoutURLCount();
+    }
 
-                if (log.isDebugEnabled()) {
-                    log.debug("Redirecting user from group " + membership + " to page " + resultURL + ".");
-                }
-                return resultURL;
-            }
+    /**
+     * @return number of mappings in current configuration
+     */
+    @Managed
+    @ManagedDescription("Number of redirect mappings in current configuration")
+    public int getMappingsCount() {
+        return configuration.size();
+    }
+
+    /**
+     * @return number of rules in current configuration
+     */
+    @Managed
+    @ManagedDescription("Number of redirect rules in current configuration")
+    public int getRulesCount() {
+        return configuration.getRulesCount();
+    }
+
+    /**
+     * @return number of HTTP sessions with logged user known to this node
+     */
+    @Managed
+    @ManagedDescription("Number of HTTP sessions with logged user known to this node")
+    public int getLoggedSessionsCount() {
+        return sessionUsers.getSessionCount();
+    }
+
+    @Managed
+    @ManagedDescription("Number of logged sessions removed from registry, because they were destroyed by servlet container")
+    public long getDestroyedSessionEvictions() {
+        return sessionUsers.getDestroyedEvictions();
+    }
+
+    @Managed
+    @ManagedDescription("Number of logged sessions removed from registry after timeout of session or registryDefaultTTL")
+    public long getExpiredSessionEvictions() {
+        return sessionUsers.getExpiredEvictions();
+    }
+
+    @Managed
+    @ManagedDescription("Number of logged sessions removed from registry, because it contained registryMaxSize entries")
+    public long getOverflowSessionEvictions() {
+        return sessionUsers.getOverflowEvictions();
+    }
+
+    /**
+     * @return registry of users logged in HTTP sessions, which is shared with LoginRedirectFilter
+     */
+    public SessionUserRegistry getSessionUserRegistry() {
+        return sessionUsers;
+    }
+
+    /**
+     * @return metrics, which should receive events of login redirect filter
+     */
+    public RedirectMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return built-in statistics of this service
+     */
+    public RedirectStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Managed
+    @ManagedDescription("Number of detected logins")
+    public long getLoginsDetected() {
+        return statistics.getLoginsDetected();
+    }
+
+    @Managed
+    @ManagedDescription("Number of detected logouts")
+    public long getLogoutsDetected() {
+        return statistics.getLogoutsDetected();
+    }
+
+    @Managed
+    @ManagedDescription("Number of login redirects to default URL")
+    public long getDefaultFallbacks() {
+        return statistics.getDefaultFallbacks();
+    }
+
+    @Managed
+    @ManagedDescription("Number of logins and logouts of users without identity")
+    public long getIdentitiesNotFound() {
+        return statistics.getIdentitiesNotFound();
+    }
+
+    @Managed
+    @ManagedDescription("Number of login redirects for each mapping")
+    public String getMappingRedirects() {
+        return statistics.getMappingRedirects().toString();
+    }
+
+    @Managed
+    @ManagedDescription("Latency of login redirect decisions")
+    public String getDecisionLatency() {
+        return statistics.getDecisionLatency().toString();
+    }
+
+    @Managed
+    @ManagedDescription("Latency of logout processing in filter")
+    public String getLogoutLatency() {
+        return statistics.getLogoutLatency().toString();
+    }
+
+    @Managed
+    @ManagedDescription("Number of login requests, which were not redirected and left login for next request, because identity was missing")
+    public long getIdentityWaits() {
+        return pendingIdentities.getWaits();
+    }
+
+    @Managed
+    @ManagedDescription("Number of deferred logins, which were redirected by later request of the user")
+    public long getIdentityWaitsCompleted() {
+        return pendingIdentities.getCompleted();
+    }
+
+    @Managed
+    @ManagedDescription("Number of deferred logins, which didn't get identity in time given by identityWaitTimeout")
+    public long getIdentityWaitTimeouts() {
+        return pendingIdentities.getTimeouts();
+    }
+
+    @Managed
+    @ManagedDescription("Reset statistics of login redirects")
+    @Impact(ImpactType.WRITE)
+    public void resetStatistics() {
+        statistics.reset();
+    }
+
+    // Metrics forwarding events to built-in statistics and custom metrics
+    private static class CompositeMetrics implements RedirectMetrics {
+        private final RedirectMetrics first;
+        private final RedirectMetrics second;
+
+        private CompositeMetrics(RedirectMetrics first, RedirectMetrics second) {
+            this.first = first;
+            this.second = second;
         }
 
-        if (log.isDebugEnabled()) {
-            log.debug("Redirecting user " + username + " to default page " + defaultLogoutURL);
+        public void loginDetected() {
+            first.loginDetected();
+            second.loginDetected();
+        }
+
+        public void logoutDetected() {
+            first.logoutDetected();
+            second.logoutDetected();
+        }
+
+        public void redirectIssued(RedirectDecision decision) {
+            first.redirectIssued(decision);
+            second.redirectIssued(decision);
+        }
+
+        public void identityNotFound() {
+            first.identityNotFound();
+            second.identityNotFound();
+        }
+
+        public void decisionTime(long nanos) {
+            first.decisionTime(nanos);
+            second.decisionTime(nanos);
+        }
+
+        public void logoutTime(long nanos) {
+            first.logoutTime(nanos);
+            second.logoutTime(nanos);
         }
-        return defaultLogoutURL;
     }
 
 }
-
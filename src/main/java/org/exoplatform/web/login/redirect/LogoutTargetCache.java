@@ -0,0 +1,75 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of logout targets resolved during login of particular user. Key is username and value is URL where
+ * user should be redirected after his logout.<br />
+ * Value is always the URL instance from mapping configuration, so entry costs only the username and map entry itself.
+ * Least recently accessed entries are evicted when cache is full.
+ *
+ * @version $Revision$
+ */
+public class LogoutTargetCache {
+
+    private final int maxSize;
+    private final Map<String, String> targets;
+
+    public LogoutTargetCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.targets = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized void put(String username, String logoutURL) {
+        targets.put(username, logoutURL);
+    }
+
+    public synchronized String get(String username) {
+        return targets.get(username);
+    }
+
+    public synchronized String remove(String username) {
+        return targets.remove(username);
+    }
+
+    public synchronized int size() {
+        return targets.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void clear() {
+        targets.clear();
+    }
+
+}
@@ -23,6 +23,9 @@
 package org.exoplatform.web.login.redirect;
 
 /**
+ * Mapping of group to login and logout URL. Optional path limits mapping to requests with URI starting with this path
+ * (for example /portal/intranet for site intranet). Mappings with path are preferred to mappings without path.
+ *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  * @version $Revision$
  */
@@ -30,6 +33,7 @@ public class MappingParam {
     private String groupName;
     private String loginURL;
     private String logoutURL;
+    private String path;
 
     public String getGroupName() {
         return groupName;
@@ -55,5 +59,13 @@ public class MappingParam {
         this.logoutURL = logoutURL;
     }
 
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
 }
 
@@ -0,0 +1,263 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.exoplatform.services.security.MembershipEntry;
+
+/**
+ * Node of prefix tree of request paths. Each node represents one path segment and optionally holds compiled mappings scoped
+ * to the path of the node (see {@link MappingParam#getPath()}). Root node holds mappings without scope.<br />
+ * Request path is matched segment by segment, so lookup cost depends on depth of path and not on number of scopes. Decision
+ * is taken from the deepest scope with suitable mapping. If no mapping of the deepest scope is suitable, parent scopes are
+ * tried up to the root.
+ *
+ * @version $Revision$
+ */
+public class MappingScope {
+
+    private static final MappingScope[] NO_CHILDREN = new MappingScope[0];
+
+    private static final Comparator<MappingScope> SEGMENT_ORDER = new Comparator<MappingScope>() {
+        public int compare(MappingScope o1, MappingScope o2) {
+            return o1.segment.compareTo(o2.segment);
+        }
+    };
+
+    private final String segment;
+    private final String path;
+    private MappingScope[] children = NO_CHILDREN;
+
+    // Mappings of this scope or null if scope only leads to deeper scopes
+    private CompiledRedirectMappings mappings;
+
+    // Nearest ancestor scope with mappings
+    private MappingScope parentScope;
+
+    private MappingScope(String segment, String path) {
+        this.segment = segment;
+        this.path = path;
+    }
+
+    /**
+     * Build tree of scopes.
+     *
+     * @param scopedMappings mappings for each normalized path. Null key is used for mappings without scope.
+     * @return root of tree
+     */
+    public static MappingScope build(Map<String, CompiledRedirectMappings> scopedMappings) {
+        MappingScope root = new MappingScope("", "/");
+        for (Map.Entry<String, CompiledRedirectMappings> entry : scopedMappings.entrySet()) {
+            MappingScope scope = root;
+            if (entry.getKey() != null) {
+                for (String segment : segments(entry.getKey())) {
+                    scope = scope.getOrCreateChild(segment);
+                }
+            }
+            scope.mappings = entry.getValue();
+        }
+        root.link(null);
+        return root;
+    }
+
+    /**
+     * Normalize path of scope.
+     *
+     * @param path path from mapping
+     * @return path starting with slash and without trailing slash or null if path is empty (mapping without scope)
+     */
+    public static String normalizePath(String path) {
+        if (path == null) {
+            return null;
+        }
+        List<String> segments = segments(path);
+        if (segments.isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String segment : segments) {
+            builder.append('/').append(segment);
+        }
+        return builder.toString();
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.trim().split("/")) {
+            if (segment.length() > 0) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    private MappingScope getOrCreateChild(String childSegment) {
+        for (MappingScope child : children) {
+            if (child.segment.equals(childSegment)) {
+                return child;
+            }
+        }
+        MappingScope child = new MappingScope(childSegment, (path.length() == 1 ? "" : path) + "/" + childSegment);
+        MappingScope[] newChildren = Arrays.copyOf(children, children.length + 1);
+        newChildren[children.length] = child;
+        Arrays.sort(newChildren, SEGMENT_ORDER);
+        children = newChildren;
+        return child;
+    }
+
+    // Link every scope with nearest ancestor scope with mappings
+    private void link(MappingScope nearestScope) {
+        parentScope = nearestScope;
+        MappingScope scopeForChildren = mappings != null ? this : nearestScope;
+        for (MappingScope child : children) {
+            child.link(scopeForChildren);
+        }
+    }
+
+    /**
+     * Find the deepest scope for request path. Method doesn't allocate.
+     *
+     * @param requestPath request URI or null
+     * @return the deepest scope with mappings, which is prefix of given path, or null if there is no such scope
+     */
+    public MappingScope findScope(String requestPath) {
+        MappingScope current = this;
+        MappingScope found = mappings != null ? this : null;
+        if (requestPath == null) {
+            return found;
+        }
+
+        int length = requestPath.indexOf(';');
+        if (length < 0) {
+            length = requestPath.length();
+        }
+        int position = 0;
+        while (position < length && current.children.length > 0) {
+            // Skip slashes
+            while (position < length && requestPath.charAt(position) == '/') {
+                position++;
+            }
+            int end = position;
+            while (end < length && requestPath.charAt(end) != '/') {
+                end++;
+            }
+            if (end == position) {
+                break;
+            }
+
+            MappingScope child = current.findChild(requestPath, position, end);
+            if (child == null) {
+                break;
+            }
+            current = child;
+            if (current.mappings != null) {
+                found = current;
+            }
+            position = end;
+        }
+        return found;
+    }
+
+    private MappingScope findChild(String requestPath, int start, int end) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(children[middle].segment, requestPath, start, end);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return children[middle];
+            }
+        }
+        return null;
+    }
+
+    // Compare segment with region of path in the same way as String.compareTo
+    private static int compare(String segment, String path, int start, int end) {
+        int regionLength = end - start;
+        int length = Math.min(segment.length(), regionLength);
+        for (int i = 0; i < length; i++) {
+            int difference = segment.charAt(i) - path.charAt(start + i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return segment.length() - regionLength;
+    }
+
+    /**
+     * Resolve decision in this scope or its parent scopes.
+     *
+     * @param memberships memberships of user
+     * @return decision of first suitable mapping of the deepest scope or null if no mapping is suitable
+     */
+    public RedirectDecision resolve(Collection<MembershipEntry> memberships) {
+        for (MappingScope scope = this; scope != null; scope = scope.parentScope) {
+            RedirectDecision decision = scope.resolveInScope(memberships);
+            if (decision != null) {
+                return decision;
+            }
+        }
+        return null;
+    }
+
+    private RedirectDecision resolveInScope(Collection<MembershipEntry> memberships) {
+        return mappings == null ? null : mappings.findDecision(memberships);
+    }
+
+    /**
+     * @return path of this scope
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return mappings of this scope or null if scope has no own mappings
+     */
+    public CompiledRedirectMappings getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @param scopes list where this scope and all its descendants with mappings are added
+     */
+    public void collectScopes(List<MappingScope> scopes) {
+        if (mappings != null) {
+            scopes.add(this);
+        }
+        for (MappingScope child : children) {
+            child.collectScopes(scopes);
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.Arrays;
+
+/**
+ * Matcher for request paths, which should be ignored by {@link LoginRedirectFilter} (skins, javascript, images etc.).<br />
+ * Path prefixes and file extensions are compiled into character tries when filter is initialized, so matching of
+ * request URI is done without any allocation and without regular expressions.
+ *
+ * @version $Revision$
+ */
+public class PathExclusionMatcher {
+
+    private static final PathExclusionMatcher EMPTY = new PathExclusionMatcher(new String[0], new String[0]);
+
+    // Trie of path prefixes (relative to context path)
+    private final Node prefixes;
+
+    // Trie of file extensions stored in reversed order, so they can be matched from the end of URI
+    private final Node extensions;
+
+    private final boolean empty;
+
+    public PathExclusionMatcher(String[] excludedPrefixes, String[] excludedExtensions) {
+        this.prefixes = new Node();
+        this.extensions = new Node();
+
+        for (String prefix : excludedPrefixes) {
+            prefix = prefix.trim();
+            if (prefix.length() > 0) {
+                prefixes.add(prefix);
+            }
+        }
+
+        for (String extension : excludedExtensions) {
+            extension = extension.trim().toLowerCase();
+            if (extension.length() > 0) {
+                if (extension.charAt(0) != '.') {
+                    extension = "." + extension;
+                }
+                extensions.add(new StringBuilder(extension).reverse().toString());
+            }
+        }
+
+        this.empty = prefixes.isLeafless() && extensions.isLeafless();
+    }
+
+    /**
+     * Create matcher from comma-separated lists of prefixes and extensions. Both arguments can be null.
+     *
+     * @param excludedPrefixes comma-separated path prefixes like "/skins/,/javascript/"
+     * @param excludedExtensions comma-separated extensions like "css,js,png"
+     * @return matcher
+     */
+    public static PathExclusionMatcher parse(String excludedPrefixes, String excludedExtensions) {
+        if (excludedPrefixes == null && excludedExtensions == null) {
+            return EMPTY;
+        }
+
+        String[] prefixArray = excludedPrefixes == null ? new String[0] : excludedPrefixes.split(",");
+        String[] extensionArray = excludedExtensions == null ? new String[0] : excludedExtensions.split(",");
+        return new PathExclusionMatcher(prefixArray, extensionArray);
+    }
+
+    /**
+     * @param requestURI URI of request
+     * @param offset length of context path, which is ignored during prefix matching
+     * @return true if request should be ignored by filter
+     */
+    public boolean isExcluded(String requestURI, int offset) {
+        if (empty || requestURI == null) {
+            return false;
+        }
+
+        return prefixes.matchesPrefix(requestURI, offset) || extensions.matchesReversedSuffix(requestURI, extensionEnd(requestURI));
+    }
+
+    // Extension of last segment ends before its path parameters (for example ";jsessionid=...")
+    private static int extensionEnd(String requestURI) {
+        int parameters = requestURI.indexOf(';', requestURI.lastIndexOf('/') + 1);
+        return parameters < 0 ? requestURI.length() : parameters;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    // Trie node with sorted child keys, so that lookup of child is binary search over array
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        private void add(String word) {
+            Node node = this;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.getOrCreateChild(word.charAt(i));
+            }
+            node.terminal = true;
+        }
+
+        private Node getOrCreateChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insertAt = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = new Node();
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+
+        private Node getChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private boolean isLeafless() {
+            return keys.length == 0 && !terminal;
+        }
+
+        private boolean matchesPrefix(String value, int offset) {
+            Node node = this;
+            for (int i = offset; i < value.length(); i++) {
+                node = node.getChild(value.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesReversedSuffix(String value, int end) {
+            Node node = this;
+            for (int i = end - 1; i >= 0; i--) {
+                char c = value.charAt(i);
+                if (c == '/') {
+                    return false;
+                }
+                node = node.getChild(Character.toLowerCase(c));
+                if (node == null) {
+                    return false;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpSession;
+
+import org.exoplatform.services.security.IdentityRegistry;
+
+/**
+ * Logins, which couldn't be redirected, because identity of user was not registered in {@link IdentityRegistry} yet.
+ * Request thread doesn't wait for the identity: conversation state of the user is registered by the same thread before
+ * {@link LoginRedirectFilter} is invoked, so nothing could release it. Instead, login is left unprocessed and the next
+ * request of the user in the same HTTP session detects it again. Identity registered meanwhile by other thread (for example
+ * by login module of concurrent request of the user) is then used for the redirect.<br />
+ * Time of first attempt is kept in attribute of HTTP session. Login is retried only until timeout elapses, then it's
+ * processed without redirect.
+ *
+ * @version $Revision$
+ */
+public class PendingIdentities {
+
+    /**
+     * Name of attribute of HTTP session with time of first attempt to redirect login, whose identity was missing.
+     */
+    public static final String ATTRIBUTE_NAME = PendingIdentities.class.getName() + ".since";
+
+    private final long timeoutMillis;
+
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * @param timeoutMillis maximal time since first attempt, when login is retried. 0 disables retries.
+     */
+    public PendingIdentities(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Identity of user was not found during login. Decide whether login should be retried by next request.
+     *
+     * @param session HTTP session of the user
+     * @param now current time in milliseconds
+     * @return true if login should stay unprocessed, false if it's processed without redirect
+     */
+    public boolean defer(HttpSession session, long now) {
+        if (timeoutMillis <= 0) {
+            return false;
+        }
+
+        Long since = (Long) session.getAttribute(ATTRIBUTE_NAME);
+        if (since == null) {
+            session.setAttribute(ATTRIBUTE_NAME, now);
+        } else if (now - since >= timeoutMillis) {
+            session.removeAttribute(ATTRIBUTE_NAME);
+            timeouts.incrementAndGet();
+            return false;
+        }
+        waits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Login of the user was redirected. Forget previous attempts.
+     *
+     * @param session HTTP session of the user
+     */
+    public void loginRedirected(HttpSession session) {
+        if (timeoutMillis > 0 && session.getAttribute(ATTRIBUTE_NAME) != null) {
+            session.removeAttribute(ATTRIBUTE_NAME);
+            completed.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of logins left unprocessed, because identity was missing
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * @return number of deferred logins redirected by later request
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return number of deferred logins, whose identity was not registered in time
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+}
@@ -0,0 +1,620 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+
+/**
+ * {@link SessionUserRegistry}, which persists changes of other registry into local file, so that node is warm after restart:
+ * sessions surviving restart (persistent or replicated HTTP sessions) are not detected as new logins and their logout URLs
+ * are still known.<br />
+ * Changes are collected in memory and appended to file (value-param registrySnapshotFile) by background thread every
+ * "registrySnapshotInterval" seconds (default 10, zero means only on stop) and when registry is stopped, so request threads
+ * wait for disk only if too many changes are waiting for write.
+ * File is append-only log of binary records readable only by its owner. Session IDs are stored as their SHA-256 hashes, so
+ * file can't be used to hijack sessions. When file contains much more records than live entries, it's compacted: live
+ * entries are written into new file, which is renamed over the old one.<br />
+ * After restart, file is loaded when registry is started. It's read into one buffer and incomplete record at
+ * the end (write interrupted by crash) is truncated before new records are appended. Loaded entries are moved into wrapped
+ * registry when they are accessed for the first time. Entries older than
+ * "registryDefaultTTL" seconds (default 86400) are ignored. Wrapped registry is given by value-param
+ * persistentRegistryDelegate (default {@link LocalSessionUserRegistry}).
+ *
+ * @version $Revision$
+ */
+public class PersistentSessionUserRegistry implements SessionUserRegistry {
+    private static final Logger log = LoggerFactory.getLogger(PersistentSessionUserRegistry.class);
+
+    // Version 2 of format with hashed session IDs
+    private static final int MAGIC = 0x4c524732;
+
+    // Types of records
+    private static final byte PUT_USER = 1;
+    private static final byte REMOVE_USER = 2;
+    private static final byte PUT_LOGOUT_URL = 3;
+    private static final byte REMOVE_LOGOUT_URL = 4;
+
+    // Log is compacted if it contains more records than this number plus twice the number of live entries
+    private static final int COMPACTION_SLACK = 1000;
+
+    // Pending changes are written by thread, which reaches this limit, if background thread doesn't keep up
+    private static final int MAX_PENDING = 10000;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // Digest is reused by each thread, so hashing of session ID doesn't look up security provider
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final SessionUserRegistry delegate;
+    private final File file;
+    private final long flushInterval;
+    private final long maxAge;
+
+    private final List<Record> pending = new ArrayList<Record>();
+
+    // Entries loaded from file, which were not accessed yet. Sessions are keyed by hash of session ID.
+    private volatile ConcurrentMap<String, Record> warmSessions = new ConcurrentHashMap<String, Record>();
+    private volatile ConcurrentMap<String, Record> warmLogoutURLs = new ConcurrentHashMap<String, Record>();
+
+    // File was loaded and it's safe to append to it. It's accessed only by thread, which writes the file.
+    private boolean loaded;
+
+    // Number of records in file. It's accessed only by thread, which writes the file.
+    private int recordsInFile;
+
+    private ScheduledExecutorService flusher;
+
+    public PersistentSessionUserRegistry(InitParams params) {
+        this(createDelegate(params), new File(getRequiredParam(params, "registrySnapshotFile")),
+                LoginRedirectService.getIntParam(params, "registrySnapshotInterval", 10) * 1000L,
+                LoginRedirectService.getIntParam(params, "registryDefaultTTL", 24 * 60 * 60) * 1000L);
+    }
+
+    /**
+     * @param delegate registry, which keeps entries in memory
+     * @param file file with snapshot
+     * @param flushInterval interval in milliseconds between two writes into file
+     * @param maxAge maximal age in milliseconds of entries loaded from file
+     */
+    public PersistentSessionUserRegistry(SessionUserRegistry delegate, File file, long flushInterval, long maxAge) {
+        this.delegate = delegate;
+        this.file = file;
+        this.flushInterval = flushInterval;
+        this.maxAge = maxAge;
+    }
+
+    private static String getRequiredParam(InitParams params, String name) {
+        ValueParam param = params.getValueParam(name);
+        if (param == null) {
+            throw new IllegalArgumentException("Value-param " + name + " is required by " + PersistentSessionUserRegistry.class.getName());
+        }
+        return param.getValue().trim();
+    }
+
+    private static SessionUserRegistry createDelegate(InitParams params) {
+        ValueParam param = params.getValueParam("persistentRegistryDelegate");
+        if (param == null) {
+            return new LocalSessionUserRegistry(params);
+        }
+
+        String className = param.getValue().trim();
+        try {
+            Class<?> registryClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            return (SessionUserRegistry) registryClass.getConstructor(InitParams.class).newInstance(params);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Can't create session user registry of class " + className, e);
+        }
+    }
+
+    public void start() {
+        delegate.start();
+        load();
+
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "LoginRedirectService registry snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        flush();
+        synchronized (this) {
+            if (file.exists() && file.length() > 0) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    log.error("Can't compact snapshot of logged users in " + file.getAbsolutePath(), e);
+                }
+            }
+        }
+        delegate.stop();
+    }
+
+    public String getUser(String sessionId) {
+        String userName = delegate.getUser(sessionId);
+        if (userName != null) {
+            return userName;
+        }
+
+        // Entry of session from time before restart is moved into delegate
+        Record record = removeWarmSession(sessionId);
+        if (record == null) {
+            return null;
+        }
+        delegate.putUser(sessionId, record.value, record.sessionTimeout);
+        return record.value;
+    }
+
+    public void putUser(String sessionId, String userName, long sessionTimeout) {
+        delegate.putUser(sessionId, userName, sessionTimeout);
+        String hash = hash(sessionId);
+        warmSessions.remove(hash);
+        append(new Record(PUT_USER, hash, userName, sessionTimeout, System.currentTimeMillis()));
+    }
+
+    public String removeUser(String sessionId) {
+        String userName = delegate.removeUser(sessionId);
+        String hash = hash(sessionId);
+        Record record = warmSessions.remove(hash);
+        if (userName == null && record != null) {
+            userName = record.value;
+        }
+        append(new Record(REMOVE_USER, hash, null, 0, System.currentTimeMillis()));
+        return userName;
+    }
+
+    public void sessionDestroyed(String sessionId) {
+        delegate.sessionDestroyed(sessionId);
+        String hash = hash(sessionId);
+        warmSessions.remove(hash);
+        append(new Record(REMOVE_USER, hash, null, 0, System.currentTimeMillis()));
+    }
+
+    public void putLogoutURL(String userName, String logoutURL) {
+        delegate.putLogoutURL(userName, logoutURL);
+        warmLogoutURLs.remove(userName);
+        append(new Record(PUT_LOGOUT_URL, userName, logoutURL, 0, System.currentTimeMillis()));
+    }
+
+    public String removeLogoutURL(String userName) {
+        String logoutURL = delegate.removeLogoutURL(userName);
+        if (logoutURL == null) {
+            Record record = warmLogoutURLs.remove(userName);
+            logoutURL = record == null ? null : record.value;
+        }
+        append(new Record(REMOVE_LOGOUT_URL, userName, null, 0, System.currentTimeMillis()));
+        return logoutURL;
+    }
+
+    public int getSessionCount() {
+        return delegate.getSessionCount() + warmSessions.size();
+    }
+
+    public int getLogoutURLCount() {
+        return delegate.getLogoutURLCount() + warmLogoutURLs.size();
+    }
+
+    public long getDestroyedEvictions() {
+        return delegate.getDestroyedEvictions();
+    }
+
+    public long getExpiredEvictions() {
+        return delegate.getExpiredEvictions();
+    }
+
+    public long getOverflowEvictions() {
+        return delegate.getOverflowEvictions();
+    }
+
+    /**
+     * Clear entries in memory. File is not affected.
+     */
+    public void clear() {
+        delegate.clear();
+        warmSessions.clear();
+        warmLogoutURLs.clear();
+    }
+
+    public SessionUserRegistry getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Write pending changes into file and compact it if needed.
+     */
+    public synchronized void flush() {
+        List<Record> records;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            records = new ArrayList<Record>(pending);
+            pending.clear();
+        }
+
+        // File must be loaded before it's modified, otherwise entries from time before restart would be lost by compaction
+        // and records would be appended after incomplete record
+        load();
+
+        try {
+            if (!file.exists() || file.length() == 0) {
+                recordsInFile = 0;
+                createOwnerOnly(file);
+                write(file, records, false);
+            } else {
+                write(file, records, true);
+            }
+            recordsInFile += records.size();
+
+            if (recordsInFile > COMPACTION_SLACK + 2 * (getSessionCount() + getLogoutURLCount())) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.error("Can't write snapshot of logged users into " + file.getAbsolutePath(), e);
+        }
+    }
+
+    // Rewrite file with live entries only
+    private void compact() throws IOException {
+        Map<String, Record> sessions = new LinkedHashMap<String, Record>();
+        Map<String, Record> logoutURLs = new LinkedHashMap<String, Record>();
+        read(file, sessions, logoutURLs, System.currentTimeMillis());
+
+        List<Record> live = new ArrayList<Record>(sessions.size() + logoutURLs.size());
+        live.addAll(sessions.values());
+        live.addAll(logoutURLs.values());
+
+        File compacted = new File(file.getPath() + ".compact");
+        compacted.delete();
+        createOwnerOnly(compacted);
+        write(compacted, live, false);
+        replace(compacted, file);
+        recordsInFile = live.size();
+    }
+
+    // Replace target with source. Target is never deleted before source takes its place.
+    private static void replace(File source, File target) throws IOException {
+        if (source.renameTo(target)) {
+            return;
+        }
+
+        // Rename doesn't replace existing file on some platforms, so target is moved aside until source is renamed
+        File previous = previousFile(target);
+        previous.delete();
+        if (!target.renameTo(previous)) {
+            throw new IOException("Can't replace " + target.getAbsolutePath() + " with " + source.getAbsolutePath());
+        }
+        if (!source.renameTo(target)) {
+            if (!previous.renameTo(target)) {
+                log.error("Can't restore " + target.getAbsolutePath() + " from " + previous.getAbsolutePath());
+            }
+            throw new IOException("Can't replace " + target.getAbsolutePath() + " with " + source.getAbsolutePath());
+        }
+        if (!previous.delete()) {
+            log.warn("Can't delete previous snapshot of logged users " + previous.getAbsolutePath());
+        }
+    }
+
+    private static File previousFile(File target) {
+        return new File(target.getPath() + ".previous");
+    }
+
+    private void append(Record record) {
+        int size;
+        synchronized (pending) {
+            pending.add(record);
+            size = pending.size();
+        }
+        if (size >= MAX_PENDING) {
+            flush();
+        }
+    }
+
+    private Record removeWarmSession(String sessionId) {
+        // Hash is not computed when all entries from time before restart were already used
+        return warmSessions.isEmpty() ? null : warmSessions.remove(hash(sessionId));
+    }
+
+    // Load file only once, before the first write
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        // Compaction was interrupted after the file was moved aside
+        File previous = previousFile(file);
+        if (!file.exists() && previous.exists()) {
+            if (previous.renameTo(file)) {
+                log.warn("Snapshot of logged users " + file.getAbsolutePath() + " was restored from " + previous.getAbsolutePath());
+            } else {
+                log.error("Can't restore snapshot of logged users " + file.getAbsolutePath() + " from "
+                        + previous.getAbsolutePath());
+            }
+        }
+
+        Map<String, Record> sessions = new LinkedHashMap<String, Record>();
+        Map<String, Record> logoutURLs = new LinkedHashMap<String, Record>();
+        if (file.exists() && file.length() > 0) {
+            try {
+                ReadResult result = read(file, sessions, logoutURLs, System.currentTimeMillis());
+                recordsInFile = result.count;
+                if (result.validLength < file.length()) {
+                    log.warn("Snapshot of logged users " + file.getAbsolutePath() + " ends with incomplete record, it's truncated");
+                    truncate(file, result.validLength);
+                }
+                log.info("Loaded " + sessions.size() + " sessions and " + logoutURLs.size() + " logout URLs from "
+                        + file.getAbsolutePath());
+            } catch (IOException e) {
+                log.error("Can't load snapshot of logged users from " + file.getAbsolutePath() + ". It will be replaced.", e);
+                sessions.clear();
+                logoutURLs.clear();
+                if (!file.delete()) {
+                    log.error("Can't delete invalid snapshot of logged users " + file.getAbsolutePath());
+                }
+            }
+        }
+
+        // Entries changed before load have precedence
+        for (Map.Entry<String, Record> entry : sessions.entrySet()) {
+            warmSessions.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Record> entry : logoutURLs.entrySet()) {
+            warmLogoutURLs.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void truncate(File target, long length) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+        try {
+            out.getChannel().truncate(length);
+        } finally {
+            out.close();
+        }
+    }
+
+    // Create empty file, which can be read and written only by its owner
+    private static void createOwnerOnly(File target) throws IOException {
+        if (!target.exists() && !target.createNewFile()) {
+            throw new IOException("Can't create " + target.getAbsolutePath());
+        }
+        if (!target.setReadable(false, false) || !target.setReadable(true, true) || !target.setWritable(false, false)
+                || !target.setWritable(true, true)) {
+            log.warn("Can't restrict access to " + target.getAbsolutePath() + " to its owner");
+        }
+    }
+
+    /**
+     * @param sessionId ID of HTTP session
+     * @return hex encoded SHA-256 hash of session ID, which is stored in file instead of session ID
+     */
+    private static String hash(String sessionId) {
+        byte[] digest;
+        try {
+            digest = DIGEST.get().digest(sessionId.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    // Replay log into maps of live entries
+    private ReadResult read(File source, Map<String, Record> sessions, Map<String, Record> logoutURLs, long now)
+            throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        ReadResult result = new ReadResult();
+        try {
+            // File is read into heap buffer instead of mapping, because mapped file couldn't be deleted or renamed on Windows
+            // until the mapping is garbage collected
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + source.getAbsolutePath() + " is too large");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            buffer.flip();
+            if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+                throw new IOException("File " + source.getAbsolutePath() + " is not snapshot of logged users");
+            }
+
+            result.validLength = buffer.position();
+            while (buffer.hasRemaining()) {
+                Record record;
+                try {
+                    record = readRecord(buffer);
+                } catch (BufferUnderflowException e) {
+                    // Last record was not written completely
+                    break;
+                }
+                result.count++;
+                result.validLength = buffer.position();
+
+                boolean expired = now - record.time > maxAge;
+                switch (record.type) {
+                case PUT_USER:
+                    sessions.remove(record.key);
+                    if (!expired) {
+                        sessions.put(record.key, record);
+                    }
+                    break;
+                case REMOVE_USER:
+                    sessions.remove(record.key);
+                    break;
+                case PUT_LOGOUT_URL:
+                    logoutURLs.remove(record.key);
+                    if (!expired) {
+                        logoutURLs.put(record.key, record);
+                    }
+                    break;
+                case REMOVE_LOGOUT_URL:
+                    logoutURLs.remove(record.key);
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + record.type + " in " + source.getAbsolutePath());
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    private static Record readRecord(ByteBuffer buffer) throws IOException {
+        byte type = buffer.get();
+        long time = buffer.getLong();
+        long sessionTimeout = buffer.getLong();
+        String key = readString(buffer);
+        String value = readString(buffer);
+        return new Record(type, key, value, sessionTimeout, time);
+    }
+
+    private static String readString(ByteBuffer buffer) throws UnsupportedEncodingException {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            // Length of string is known before the string is written completely
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void write(File target, List<Record> records, boolean append) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target, append)));
+        try {
+            if (!append) {
+                out.writeInt(MAGIC);
+            }
+            for (Record record : records) {
+                out.writeByte(record.type);
+                out.writeLong(record.time);
+                out.writeLong(record.sessionTimeout);
+                writeString(out, record.key);
+                writeString(out, record.value);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static class ReadResult {
+        // Number of complete records
+        private int count;
+
+        // Length of file up to the end of last complete record
+        private long validLength;
+    }
+
+    // Change of registry in the form written into file
+    private static class Record {
+        private final byte type;
+        private final String key;
+        private final String value;
+        private final long sessionTimeout;
+        private final long time;
+
+        private Record(byte type, String key, String value, long sessionTimeout, long time) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+            this.sessionTimeout = sessionTimeout;
+            this.time = time;
+        }
+    }
+
+}
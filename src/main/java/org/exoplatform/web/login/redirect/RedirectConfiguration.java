@@ -0,0 +1,152 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.exoplatform.services.security.MembershipEntry;
+
+/**
+ * Immutable snapshot of redirect configuration used by {@link LoginRedirectService}. It contains compiled rules, mappings organized
+ * in {@link MappingScope}s by their path, default URLs and caches of decisions made with this configuration. When
+ * configuration is reloaded, whole snapshot is replaced, so running lookups always see consistent configuration and cached
+ * decisions are never shared between configurations.
+ *
+ * @version $Revision$
+ */
+public class RedirectConfiguration {
+
+    private final RedirectDecision defaultDecision;
+    private final CompiledRedirectRules rules;
+    private final MappingScope rootScope;
+    private final List<MappingScope> scopes = new ArrayList<MappingScope>();
+    private final int mappingsCount;
+
+    public RedirectConfiguration(RedirectDecision defaultDecision, MappingScope rootScope) {
+        this(defaultDecision, null, rootScope);
+    }
+
+    /**
+     * @param defaultDecision decision used if no rule or mapping is suitable
+     * @param rules rules tried before mappings or null if there are no rules
+     * @param rootScope root of tree with mappings
+     */
+    public RedirectConfiguration(RedirectDecision defaultDecision, CompiledRedirectRules rules, MappingScope rootScope) {
+        this.defaultDecision = defaultDecision;
+        this.rules = rules;
+        this.rootScope = rootScope;
+        rootScope.collectScopes(scopes);
+
+        int count = 0;
+        for (MappingScope scope : scopes) {
+            count += scope.getMappings().size();
+        }
+        this.mappingsCount = count;
+    }
+
+    /**
+     * Compile configuration from given mappings.
+     *
+     * @param config mappings in order of their priority
+     * @param defaultLoginURL login URL used if no mapping is suitable for user
+     * @param defaultLogoutURL logout URL used if no mapping is suitable for user
+     * @return compiled configuration
+     * @throws IllegalArgumentException if some mapping is not valid
+     * @see RedirectMappingCompiler
+     */
+    public static RedirectConfiguration compile(RedirectMappingConfig config, String defaultLoginURL, String defaultLogoutURL) {
+        return new RedirectMappingCompiler().compile(config, defaultLoginURL, defaultLogoutURL);
+    }
+
+    /**
+     * @param memberships memberships of user
+     * @return decision of first suitable rule, first mapping without scope suitable for given memberships or default
+     *         decision if there is no such rule or mapping
+     */
+    public RedirectDecision resolve(Collection<MembershipEntry> memberships) {
+        return resolve(memberships, null);
+    }
+
+    /**
+     * @param memberships memberships of user
+     * @param requestPath request URI, which is used to find scope of mappings. If it's null, only mappings without scope are
+     *            used.
+     * @return decision of first suitable rule, decision of first suitable mapping of the deepest scope for given path,
+     *         decision of its parent scopes if no mapping of the scope is suitable or default decision if there is no such
+     *         rule or mapping at all
+     */
+    public RedirectDecision resolve(Collection<MembershipEntry> memberships, String requestPath) {
+        if (rules != null) {
+            RedirectDecision decision = rules.findDecision(memberships);
+            if (decision != null) {
+                return decision;
+            }
+        }
+
+        MappingScope scope = rootScope.findScope(requestPath);
+        if (scope == null) {
+            return defaultDecision;
+        }
+        RedirectDecision decision = scope.resolve(memberships);
+        return decision == null ? defaultDecision : decision;
+    }
+
+    public RedirectDecision getDefaultDecision() {
+        return defaultDecision;
+    }
+
+    public MappingScope getRootScope() {
+        return rootScope;
+    }
+
+    /**
+     * @return scopes with mappings, root scope is first
+     */
+    public List<MappingScope> getScopes() {
+        return scopes;
+    }
+
+    /**
+     * @return rules tried before mappings or null if there are no rules
+     */
+    public CompiledRedirectRules getRules() {
+        return rules;
+    }
+
+    /**
+     * @return number of rules
+     */
+    public int getRulesCount() {
+        return rules == null ? 0 : rules.size();
+    }
+
+    /**
+     * @return number of mappings in all scopes
+     */
+    public int size() {
+        return mappingsCount;
+    }
+
+}
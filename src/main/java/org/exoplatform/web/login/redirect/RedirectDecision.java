@@ -0,0 +1,112 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+/**
+ * Immutable pair of login and logout URL decided for particular set of user memberships. URLs are compiled into
+ * {@link RedirectTarget}s when decision is created, so invalid URL is reported when configuration is loaded.
+ *
+ * @version $Revision$
+ */
+public class RedirectDecision {
+
+    private final String mappingId;
+    private final String groupName;
+    private final String loginURL;
+    private final String logoutURL;
+    private final RedirectTarget loginTarget;
+    private final RedirectTarget logoutTarget;
+
+    /**
+     * @param groupName group of mapping, which was used for decision or null if default URLs are used
+     * @param loginURL URL to redirect after login
+     * @param logoutURL URL to redirect after logout
+     * @throws IllegalArgumentException if some URL is not valid
+     */
+    public RedirectDecision(String groupName, String loginURL, String logoutURL) {
+        this(groupName, groupName, loginURL, logoutURL);
+    }
+
+    /**
+     * @param mappingId identifier of mapping (its group) or rule, which was used for decision
+     * @param groupName group of mapping, which was used for decision or null if default URLs are used
+     * @param loginURL URL to redirect after login
+     * @param logoutURL URL to redirect after logout
+     * @throws IllegalArgumentException if some URL is not valid
+     */
+    public RedirectDecision(String mappingId, String groupName, String loginURL, String logoutURL) {
+        this.mappingId = mappingId;
+        this.groupName = groupName;
+        this.loginURL = loginURL;
+        this.logoutURL = logoutURL;
+        this.loginTarget = RedirectTarget.compile(loginURL);
+        this.logoutTarget = RedirectTarget.compile(logoutURL);
+    }
+
+    /**
+     * @return identifier of mapping or rule, which was used for decision, or null if default URLs are used
+     */
+    public String getMappingId() {
+        return mappingId;
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public String getLoginURL() {
+        return loginURL;
+    }
+
+    public String getLogoutURL() {
+        return logoutURL;
+    }
+
+    /**
+     * @param userName name of user
+     * @param portalName name of portal container
+     * @return URL to redirect given user after login or null if it's not configured
+     */
+    public String getLoginURL(String userName, String portalName) {
+        return loginTarget == null ? null : loginTarget.expand(userName, portalName);
+    }
+
+    /**
+     * @param userName name of user
+     * @param portalName name of portal container
+     * @return URL to redirect given user after logout or null if it's not configured
+     */
+    public String getLogoutURL(String userName, String portalName) {
+        return logoutTarget == null ? null : logoutTarget.expand(userName, portalName);
+    }
+
+    public boolean isDefault() {
+        return groupName == null;
+    }
+
+    @Override
+    public String toString() {
+        return "RedirectDecision[group=" + groupName + ", loginURL=" + loginURL + ", logoutURL=" + logoutURL + "]";
+    }
+
+}
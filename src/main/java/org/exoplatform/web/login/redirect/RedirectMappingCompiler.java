@@ -0,0 +1,497 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.exoplatform.services.security.MembershipEntry;
+
+/**
+ * Compiler of redirect mappings and rules into {@link RedirectConfiguration}. All mappings and rules are validated before
+ * anything is built:
+ * <ul>
+ * <li>invalid mappings and rules (missing or malformed group, invalid URL) and invalid default URLs are reported together
+ * and compilation fails. If invalid entries are skipped (see {@link #setSkipInvalid(boolean)}), they are reported and left
+ * out instead. Invalid default URL is replaced by fallback URL (see {@link #setFallbackURLs(String, String)}).</li>
+ * <li>duplicate mappings (the same group in the same path scope) are reported and only the first one is used</li>
+ * <li>shadowed mappings (the same group as earlier mapping with membership type "*" in the same path scope) can never be
+ * selected, so they are reported and left out</li>
+ * <li>rules, which can never match (membership from allOf or all memberships from anyOf are excluded by noneOf), are
+ * reported and left out too</li>
+ * </ul>
+ * Group names, URLs and paths are shared, so mappings generated from few distinct values don't keep copies of the same
+ * strings.<br />
+ * Instance keeps report of its last compilation and it's not thread safe. Method {@link #main(String[])} compiles XML file
+ * with mappings and prints the report.
+ *
+ * @version $Revision$
+ */
+public class RedirectMappingCompiler {
+
+    private final Map<String, String> strings = new HashMap<String, String>();
+    private final List<String> problems = new ArrayList<String>();
+
+    private boolean skipInvalid;
+    private String fallbackLoginURL;
+    private String fallbackLogoutURL;
+
+    private int inputCount;
+    private int duplicateCount;
+    private int shadowedCount;
+    private int invalidCount;
+    private int scopeCount;
+    private int mappingCount;
+    private int ruleInputCount;
+    private int ruleCount;
+    private long compileTime;
+
+    /**
+     * @param skipInvalid true if invalid mappings and rules should be reported and left out instead of failing compilation
+     */
+    public void setSkipInvalid(boolean skipInvalid) {
+        this.skipInvalid = skipInvalid;
+    }
+
+    /**
+     * Set URLs used instead of invalid default URLs if invalid entries are skipped. Both are null by default, so portal
+     * handles redirect after login or logout as if no default URL was configured.
+     *
+     * @param loginURL login URL used if default login URL is not valid, for example default of previous configuration
+     * @param logoutURL logout URL used if default logout URL is not valid
+     */
+    public void setFallbackURLs(String loginURL, String logoutURL) {
+        this.fallbackLoginURL = loginURL;
+        this.fallbackLogoutURL = logoutURL;
+    }
+
+    /**
+     * Compile configuration from given mappings and rules.
+     *
+     * @param config mappings in order of their priority and rules
+     * @param defaultLoginURL login URL used if no mapping is suitable for user
+     * @param defaultLogoutURL logout URL used if no mapping is suitable for user
+     * @return compiled configuration
+     * @throws IllegalArgumentException if default URL or some mapping is not valid and invalid entries are not skipped.
+     *             Message contains all invalid entries.
+     */
+    public RedirectConfiguration compile(RedirectMappingConfig config, String defaultLoginURL, String defaultLogoutURL) {
+        long start = System.nanoTime();
+        strings.clear();
+        problems.clear();
+        inputCount = 0;
+        ruleInputCount = 0;
+        duplicateCount = 0;
+        shadowedCount = 0;
+        invalidCount = 0;
+        ruleCount = 0;
+
+        List<MappingParam> mappings = config.getRedirectMappings() == null ? Collections.<MappingParam> emptyList() : config
+                .getRedirectMappings();
+        inputCount = mappings.size();
+
+        // Mappings without path are in scope with null key
+        Map<String, ScopeMappings> scopedMappings = new LinkedHashMap<String, ScopeMappings>();
+        scopedMappings.put(null, new ScopeMappings());
+
+        List<String> invalid = new ArrayList<String>();
+        for (int i = 0; i < mappings.size(); i++) {
+            MappingParam mappingParam = mappings.get(i);
+            String error = validate(mappingParam);
+            if (error != null) {
+                invalid.add("Mapping #" + (i + 1) + " " + describe(mappingParam) + ": " + error);
+                continue;
+            }
+
+            MappingParam mapping = copy(mappingParam);
+            ScopeMappings scope = scopedMappings.get(mapping.getPath());
+            if (scope == null) {
+                scope = new ScopeMappings();
+                scopedMappings.put(mapping.getPath(), scope);
+            }
+
+            // MembershipEntry.equals treats "*" as wildcard, so memberships are compared by their exact group names
+            MembershipEntry membership = parseMembership(mapping.getGroupName());
+            if (scope.groupNames.contains(mapping.getGroupName())) {
+                duplicateCount++;
+                problems.add("Mapping #" + (i + 1) + " " + describe(mapping) + " is duplicate of earlier mapping and it's ignored");
+            } else if (scope.anyTypeGroups.contains(membership.getGroup())) {
+                shadowedCount++;
+                problems.add("Mapping #" + (i + 1) + " " + describe(mapping) + " is shadowed by earlier mapping "
+                        + MembershipEntry.ANY_TYPE + ":" + membership.getGroup() + " and it's ignored");
+            } else {
+                scope.add(membership, mapping);
+            }
+        }
+
+        List<RedirectRule> ruleParams = config.getRedirectRules() == null ? Collections.<RedirectRule> emptyList() : config
+                .getRedirectRules();
+        ruleInputCount = ruleParams.size();
+        List<RedirectRule> rules = new ArrayList<RedirectRule>();
+        for (int i = 0; i < ruleParams.size(); i++) {
+            RedirectRule ruleParam = ruleParams.get(i);
+            String error = validate(ruleParam);
+            if (error != null) {
+                invalid.add("Rule #" + (i + 1) + " " + ruleParam + ": " + error);
+                continue;
+            }
+
+            RedirectRule rule = copy(ruleParam, i);
+            String conflict = findConflict(rule);
+            if (conflict != null) {
+                shadowedCount++;
+                problems.add("Rule #" + (i + 1) + " " + rule + " can never match, because " + conflict + ". It's ignored");
+            } else {
+                rules.add(rule);
+            }
+        }
+
+        String loginURL = validateDefault("Default login URL", defaultLoginURL, fallbackLoginURL, invalid);
+        String logoutURL = validateDefault("Default logout URL", defaultLogoutURL, fallbackLogoutURL, invalid);
+
+        invalidCount = invalid.size();
+        if (skipInvalid) {
+            for (String error : invalid) {
+                problems.add(error + ". It's ignored");
+            }
+        } else {
+            problems.addAll(invalid);
+        }
+        if (!invalid.isEmpty() && !skipInvalid) {
+            StringBuilder message = new StringBuilder("Invalid redirect mappings:");
+            for (String error : invalid) {
+                message.append("\n").append(error);
+            }
+            throw new IllegalArgumentException(message.toString());
+        }
+
+        RedirectConfiguration configuration = new RedirectConfiguration(new RedirectDecision(null, intern(loginURL),
+                intern(logoutURL)), rules.isEmpty() ? null : new CompiledRedirectRules(rules), MappingScope.build(
+                compileScopes(scopedMappings)));
+        scopeCount = configuration.getScopes().size();
+        mappingCount = configuration.size();
+        ruleCount = configuration.getRulesCount();
+        compileTime = System.nanoTime() - start;
+        return configuration;
+    }
+
+    private static Map<String, CompiledRedirectMappings> compileScopes(Map<String, ScopeMappings> scopedMappings) {
+        Map<String, CompiledRedirectMappings> compiled = new LinkedHashMap<String, CompiledRedirectMappings>();
+        for (Map.Entry<String, ScopeMappings> entry : scopedMappings.entrySet()) {
+            ScopeMappings scope = entry.getValue();
+            compiled.put(entry.getKey(), new CompiledRedirectMappings(scope.memberships, scope.mappings));
+        }
+        return compiled;
+    }
+
+    // Return description of problem or null if mapping is valid
+    private String validate(MappingParam mapping) {
+        String groupName = mapping.getGroupName();
+        if (groupName == null || groupName.trim().length() == 0) {
+            return "group is missing";
+        }
+        String error = validateMembership(groupName.trim());
+        return error != null ? error : validateURLs(mapping.getLoginURL(), mapping.getLogoutURL());
+    }
+
+    // Return description of problem or null if rule is valid
+    private String validate(RedirectRule rule) {
+        boolean empty = true;
+        for (String list : new String[] { rule.getAllOf(), rule.getAnyOf(), rule.getNoneOf() }) {
+            if (list != null) {
+                for (String membership : list.split(",")) {
+                    if (membership.trim().length() > 0) {
+                        String error = validateMembership(membership.trim());
+                        if (error != null) {
+                            return membership.trim() + ": " + error;
+                        }
+                        empty = false;
+                    }
+                }
+            }
+        }
+        if (empty) {
+            return "rule must contain allOf, anyOf or noneOf";
+        }
+        return validateURLs(rule.getLoginURL(), rule.getLogoutURL());
+    }
+
+    private String validateMembership(String groupName) {
+        MembershipEntry membership = MembershipEntry.parse(groupName);
+        if (membership == null || membership.getGroup() == null || !membership.getGroup().startsWith("/")) {
+            return "group must be in form membershipType:/group/path";
+        }
+        if (membership.getMembershipType() == null || membership.getMembershipType().length() == 0) {
+            return "membership type is empty";
+        }
+        return null;
+    }
+
+    private String validateURLs(String loginURL, String logoutURL) {
+        try {
+            RedirectTarget.compile(loginURL);
+            RedirectTarget.compile(logoutURL);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    // Return given URL if it's valid, otherwise report it and return fallback URL
+    private String validateDefault(String name, String url, String fallback, List<String> invalid) {
+        try {
+            RedirectTarget.compile(url);
+            return url;
+        } catch (IllegalArgumentException e) {
+            invalid.add(name + " " + url + ": " + e.getMessage());
+            return fallback;
+        }
+    }
+
+    // Return reason why rule can never match or null if it can match
+    private String findConflict(RedirectRule rule) {
+        List<MembershipEntry> noneOf = CompiledRedirectRules.parseMemberships(rule.getNoneOf());
+        for (MembershipEntry membership : CompiledRedirectRules.parseMemberships(rule.getAllOf())) {
+            MembershipEntry excluding = findExcluding(noneOf, membership);
+            if (excluding != null) {
+                return "allOf membership " + membership + " is excluded by noneOf membership " + excluding;
+            }
+        }
+
+        List<MembershipEntry> anyOf = CompiledRedirectRules.parseMemberships(rule.getAnyOf());
+        for (MembershipEntry membership : anyOf) {
+            if (findExcluding(noneOf, membership) == null) {
+                return null;
+            }
+        }
+        return anyOf.isEmpty() ? null : "all anyOf memberships are excluded by noneOf";
+    }
+
+    // Membership "*:/group" excludes users with any membership in this group
+    private static MembershipEntry findExcluding(List<MembershipEntry> noneOf, MembershipEntry membership) {
+        for (MembershipEntry excluding : noneOf) {
+            if (excluding.getGroup().equals(membership.getGroup())
+                    && (MembershipEntry.ANY_TYPE.equals(excluding.getMembershipType()) || excluding.getMembershipType().equals(
+                            membership.getMembershipType()))) {
+                return excluding;
+            }
+        }
+        return null;
+    }
+
+    private RedirectRule copy(RedirectRule ruleParam, int index) {
+        RedirectRule rule = new RedirectRule();
+        rule.setName(intern(ruleParam.getName() != null ? ruleParam.getName() : "rule#" + (index + 1)));
+        rule.setAllOf(internMemberships(ruleParam.getAllOf()));
+        rule.setAnyOf(internMemberships(ruleParam.getAnyOf()));
+        rule.setNoneOf(internMemberships(ruleParam.getNoneOf()));
+        rule.setPriority(ruleParam.getPriority());
+        rule.setLoginURL(intern(ruleParam.getLoginURL()));
+        rule.setLogoutURL(intern(ruleParam.getLogoutURL()));
+        return rule;
+    }
+
+    // Return list of memberships in canonical form or null if list is empty
+    private String internMemberships(String memberships) {
+        StringBuilder builder = new StringBuilder();
+        for (MembershipEntry membership : CompiledRedirectRules.parseMemberships(memberships)) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(membership.getMembershipType()).append(':').append(membership.getGroup());
+        }
+        return builder.length() == 0 ? null : intern(builder.toString());
+    }
+
+    private MappingParam copy(MappingParam mappingParam) {
+        MappingParam mapping = new MappingParam();
+        MembershipEntry membership = MembershipEntry.parse(mappingParam.getGroupName().trim());
+        mapping.setGroupName(intern(membership.getMembershipType() + ":" + membership.getGroup()));
+        mapping.setLoginURL(intern(mappingParam.getLoginURL()));
+        mapping.setLogoutURL(intern(mappingParam.getLogoutURL()));
+        mapping.setPath(intern(MappingScope.normalizePath(mappingParam.getPath())));
+        return mapping;
+    }
+
+    private MembershipEntry parseMembership(String groupName) {
+        MembershipEntry membership = MembershipEntry.parse(groupName);
+        return new MembershipEntry(intern(membership.getGroup()), intern(membership.getMembershipType()));
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = strings.get(value);
+        if (shared == null) {
+            strings.put(value, value);
+            shared = value;
+        }
+        return shared;
+    }
+
+    private static String describe(MappingParam mapping) {
+        return "[group=" + mapping.getGroupName() + (mapping.getPath() == null ? "" : ", path=" + mapping.getPath()) + "]";
+    }
+
+    /**
+     * @return problems found during last compilation (duplicate, shadowed and invalid mappings)
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    public int getRuleInputCount() {
+        return ruleInputCount;
+    }
+
+    /**
+     * @return number of rules in compiled configuration
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * @return number of shadowed mappings and rules, which can never match
+     */
+    public int getShadowedCount() {
+        return shadowedCount;
+    }
+
+    public int getInvalidCount() {
+        return invalidCount;
+    }
+
+    public int getScopeCount() {
+        return scopeCount;
+    }
+
+    /**
+     * @return number of mappings in compiled configuration
+     */
+    public int getMappingCount() {
+        return mappingCount;
+    }
+
+    /**
+     * @return number of distinct strings shared by compiled mappings
+     */
+    public int getStringCount() {
+        return strings.size();
+    }
+
+    /**
+     * @return duration of last successful compilation in nanoseconds
+     */
+    public long getCompileTime() {
+        return compileTime;
+    }
+
+    /**
+     * @return one line summary of last compilation
+     */
+    public String getSummary() {
+        return "Compiled " + mappingCount + " of " + inputCount + " mappings in " + scopeCount + " scopes and " + ruleCount
+                + " of " + ruleInputCount + " rules ("
+                + duplicateCount + " duplicate, " + shadowedCount + " shadowed, " + invalidCount + " invalid, "
+                + strings.size() + " distinct strings) in " + (compileTime / 1000) + " us";
+    }
+
+    /**
+     * Compile mappings from XML file and print the report. Exit code is 1 if some mapping is invalid, 2 if file can't be read.
+     *
+     * @param args path to file in format of {@link RedirectMappingConfigParser}
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java " + RedirectMappingCompiler.class.getName() + " <mapping file>");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        RedirectMappingConfig config;
+        try {
+            config = new RedirectMappingConfigParser().parse(new File(args[0]));
+        } catch (IOException e) {
+            System.err.println("Can't read " + args[0] + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        long parseTime = System.nanoTime() - start;
+
+        RedirectMappingCompiler compiler = new RedirectMappingCompiler();
+        int exitCode = 0;
+        try {
+            compiler.compile(config, config.getDefaultLoginURL(), config.getDefaultLogoutURL());
+        } catch (IllegalArgumentException e) {
+            exitCode = 1;
+        }
+
+        for (String problem : compiler.getProblems()) {
+            System.out.println(problem);
+        }
+        System.out.println("Parsed " + compiler.getInputCount() + " mappings and " + compiler.getRuleInputCount() + " rules in "
+                + (parseTime / 1000) + " us");
+        if (exitCode == 0) {
+            System.out.println(compiler.getSummary());
+        } else {
+            System.out.println("Compilation failed: " + compiler.getInvalidCount() + " invalid mappings");
+        }
+        System.exit(exitCode);
+    }
+
+    // Accepted mappings of one path scope
+    private static class ScopeMappings {
+        private final List<MembershipEntry> memberships = new ArrayList<MembershipEntry>();
+        private final List<MappingParam> mappings = new ArrayList<MappingParam>();
+        private final Set<String> groupNames = new HashSet<String>();
+        private final Set<String> anyTypeGroups = new HashSet<String>();
+
+        private void add(MembershipEntry membership, MappingParam mapping) {
+            memberships.add(membership);
+            mappings.add(mapping);
+            groupNames.add(mapping.getGroupName());
+            if (MembershipEntry.ANY_TYPE.equals(membership.getMembershipType())) {
+                anyTypeGroups.add(membership.getGroup());
+            }
+        }
+    }
+
+}
@@ -32,6 +32,13 @@ public class RedirectMappingConfig {
 
     private List<MappingParam> redirectMappings;
 
+    // Optional rules combining several memberships, which are tried before mappings
+    private List<RedirectRule> redirectRules;
+
+    // Optional defaults, which override value-params of LoginRedirectService when configuration is reloaded from file
+    private String defaultLoginURL;
+    private String defaultLogoutURL;
+
     public List<MappingParam> getRedirectMappings() {
         return redirectMappings;
     }
@@ -40,5 +47,29 @@ public class RedirectMappingConfig {
         this.redirectMappings = redirectMappings;
     }
 
+    public List<RedirectRule> getRedirectRules() {
+        return redirectRules;
+    }
+
+    public void setRedirectRules(List<RedirectRule> redirectRules) {
+        this.redirectRules = redirectRules;
+    }
+
+    public String getDefaultLoginURL() {
+        return defaultLoginURL;
+    }
+
+    public void setDefaultLoginURL(String defaultLoginURL) {
+        this.defaultLoginURL = defaultLoginURL;
+    }
+
+    public String getDefaultLogoutURL() {
+        return defaultLogoutURL;
+    }
+
+    public void setDefaultLogoutURL(String defaultLogoutURL) {
+        this.defaultLogoutURL = defaultLogoutURL;
+    }
+
 }
 
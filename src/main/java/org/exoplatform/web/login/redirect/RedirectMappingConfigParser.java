@@ -0,0 +1,192 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Parser of redirect mappings from XML file. File uses the same format as configuration of {@link LoginRedirectService}
+ * in portal configuration, so it can be either whole configuration file or only fragment with mapping objects:
+ *
+ * <pre>
+ * &lt;redirect-mappings&gt;
+ *    &lt;value-param&gt;
+ *       &lt;name&gt;defaultLoginURL&lt;/name&gt;
+ *       &lt;value&gt;/portal/classic/home&lt;/value&gt;
+ *    &lt;/value-param&gt;
+ *    &lt;object type="org.exoplatform.web.login.redirect.MappingParam"&gt;
+ *       &lt;field name="groupName"&gt;&lt;string&gt;*:/platform/administrators&lt;/string&gt;&lt;/field&gt;
+ *       &lt;field name="loginURL"&gt;&lt;string&gt;/portal/g/:platform:administrators/administration/registry&lt;/string&gt;&lt;/field&gt;
+ *       &lt;field name="logoutURL"&gt;&lt;string&gt;/portal/classic/home&lt;/string&gt;&lt;/field&gt;
+ *    &lt;/object&gt;
+ * &lt;/redirect-mappings&gt;
+ * </pre>
+ *
+ * Mapping objects are read in document order. Field path of mapping and value-params defaultLoginURL and defaultLogoutURL
+ * are optional. Objects of type {@link RedirectRule} are read as rules, field priority can be given as &lt;int&gt;.<br />
+ * Document type declarations are rejected, so file can't reference external entities or expand entities recursively.
+ *
+ * @version $Revision$
+ */
+public class RedirectMappingConfigParser {
+
+    public RedirectMappingConfig parse(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return parse(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public RedirectMappingConfig parse(InputStream in) throws IOException {
+        Document document;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(false);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setXIncludeAware(false);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            document = builder.parse(in);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Can't create XML parser: " + e.getMessage());
+        } catch (SAXException e) {
+            throw new IOException("Invalid XML of redirect mappings: " + e.getMessage());
+        }
+
+        RedirectMappingConfig config = new RedirectMappingConfig();
+        List<MappingParam> mappings = new ArrayList<MappingParam>();
+        List<RedirectRule> rules = new ArrayList<RedirectRule>();
+
+        NodeList objects = document.getElementsByTagName("object");
+        for (int i = 0; i < objects.getLength(); i++) {
+            Element object = (Element) objects.item(i);
+            if (MappingParam.class.getName().equals(object.getAttribute("type"))) {
+                mappings.add(parseMapping(object));
+            } else if (RedirectRule.class.getName().equals(object.getAttribute("type"))) {
+                rules.add(parseRule(object));
+            }
+        }
+        config.setRedirectMappings(mappings);
+        config.setRedirectRules(rules);
+
+        NodeList valueParams = document.getElementsByTagName("value-param");
+        for (int i = 0; i < valueParams.getLength(); i++) {
+            Element valueParam = (Element) valueParams.item(i);
+            String name = getChildText(valueParam, "name");
+            String value = getChildText(valueParam, "value");
+            if ("defaultLoginURL".equals(name)) {
+                config.setDefaultLoginURL(value);
+            } else if ("defaultLogoutURL".equals(name)) {
+                config.setDefaultLogoutURL(value);
+            }
+        }
+
+        return config;
+    }
+
+    private MappingParam parseMapping(Element object) throws IOException {
+        MappingParam mapping = new MappingParam();
+        for (Node node = object.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && "field".equals(node.getNodeName())) {
+                Element field = (Element) node;
+                String name = field.getAttribute("name");
+                String value = getChildText(field, "string");
+                if ("groupName".equals(name)) {
+                    mapping.setGroupName(value);
+                } else if ("loginURL".equals(name)) {
+                    mapping.setLoginURL(value);
+                } else if ("logoutURL".equals(name)) {
+                    mapping.setLogoutURL(value);
+                } else if ("path".equals(name)) {
+                    mapping.setPath(value);
+                } else {
+                    throw new IOException("Unknown field " + name + " of " + MappingParam.class.getName());
+                }
+            }
+        }
+        return mapping;
+    }
+
+    private RedirectRule parseRule(Element object) throws IOException {
+        RedirectRule rule = new RedirectRule();
+        for (Node node = object.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && "field".equals(node.getNodeName())) {
+                Element field = (Element) node;
+                String name = field.getAttribute("name");
+                String value = getChildText(field, "string");
+                if ("name".equals(name)) {
+                    rule.setName(value);
+                } else if ("allOf".equals(name)) {
+                    rule.setAllOf(value);
+                } else if ("anyOf".equals(name)) {
+                    rule.setAnyOf(value);
+                } else if ("noneOf".equals(name)) {
+                    rule.setNoneOf(value);
+                } else if ("priority".equals(name)) {
+                    String priority = getChildText(field, "int");
+                    try {
+                        rule.setPriority(Integer.parseInt(priority != null ? priority : value));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Priority of " + RedirectRule.class.getName() + " must be number");
+                    }
+                } else if ("loginURL".equals(name)) {
+                    rule.setLoginURL(value);
+                } else if ("logoutURL".equals(name)) {
+                    rule.setLogoutURL(value);
+                } else {
+                    throw new IOException("Unknown field " + name + " of " + RedirectRule.class.getName());
+                }
+            }
+        }
+        return rule;
+    }
+
+    private String getChildText(Element parent, String childName) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && childName.equals(node.getNodeName())) {
+                return node.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,61 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+/**
+ * Receiver of events from {@link LoginRedirectFilter} and {@link LoginRedirectService}. Implementations are called from
+ * request threads, so they should be cheap and they shouldn't allocate objects for each event.<br />
+ * Custom implementation can be configured by value-param metricsClass of LoginRedirectService. It needs public constructor
+ * without parameters. It receives events in addition to built-in {@link RedirectStatistics}.
+ *
+ * @version $Revision$
+ */
+public interface RedirectMetrics {
+
+    void loginDetected();
+
+    void logoutDetected();
+
+    /**
+     * User was redirected according to mapping (or default URL) of given decision.
+     *
+     * @param decision decision used for redirect
+     */
+    void redirectIssued(RedirectDecision decision);
+
+    /**
+     * Identity of user was not found, so user is not redirected after login or he is redirected to default URL after logout.
+     */
+    void identityNotFound();
+
+    /**
+     * @param nanos time spent by resolving of login redirect URL
+     */
+    void decisionTime(long nanos);
+
+    /**
+     * @param nanos time spent by processing of logout in filter
+     */
+    void logoutTime(long nanos);
+
+}
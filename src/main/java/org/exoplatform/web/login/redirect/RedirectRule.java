@@ -0,0 +1,106 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+/**
+ * Rule, which combines several memberships of user. Rule is suitable for user, who has all memberships from allOf, at
+ * least one membership from anyOf and none of memberships from noneOf. Each list contains memberships in form
+ * membershipType:/group separated by commas and empty list is ignored. For example rule with allOf
+ * "manager:/organization/sales, *:/platform/users" and noneOf "*:/platform/guests".<br />
+ * Rules are tried before mappings ({@link MappingParam}). Rules with higher priority are tried first and rules with the
+ * same priority are tried in their order. Optional name is used in statistics of redirects instead of group of mapping.
+ *
+ * @version $Revision$
+ */
+public class RedirectRule {
+    private String name;
+    private String allOf;
+    private String anyOf;
+    private String noneOf;
+    private int priority;
+    private String loginURL;
+    private String logoutURL;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getAllOf() {
+        return allOf;
+    }
+
+    public void setAllOf(String allOf) {
+        this.allOf = allOf;
+    }
+
+    public String getAnyOf() {
+        return anyOf;
+    }
+
+    public void setAnyOf(String anyOf) {
+        this.anyOf = anyOf;
+    }
+
+    public String getNoneOf() {
+        return noneOf;
+    }
+
+    public void setNoneOf(String noneOf) {
+        this.noneOf = noneOf;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public String getLoginURL() {
+        return loginURL;
+    }
+
+    public void setLoginURL(String loginURL) {
+        this.loginURL = loginURL;
+    }
+
+    public String getLogoutURL() {
+        return logoutURL;
+    }
+
+    public void setLogoutURL(String logoutURL) {
+        this.logoutURL = logoutURL;
+    }
+
+    @Override
+    public String toString() {
+        return "RedirectRule[name=" + name + ", allOf=" + allOf + ", anyOf=" + anyOf + ", noneOf=" + noneOf + ", priority="
+                + priority + "]";
+    }
+
+}
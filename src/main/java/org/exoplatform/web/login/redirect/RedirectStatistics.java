@@ -0,0 +1,140 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Built-in implementation of {@link RedirectMetrics}, which is exposed by management view of LoginRedirectService.
+ * Counters are striped and histograms use preallocated buckets, so recording of events doesn't allocate objects after
+ * counter of each mapping is created.
+ *
+ * @version $Revision$
+ */
+public class RedirectStatistics implements RedirectMetrics {
+
+    private final StripedCounter loginsDetected = new StripedCounter();
+    private final StripedCounter logoutsDetected = new StripedCounter();
+    private final StripedCounter defaultFallbacks = new StripedCounter();
+    private final StripedCounter identitiesNotFound = new StripedCounter();
+
+    // Key is group of mapping or name of rule, so it stays the same when order of mappings changes
+    private final ConcurrentMap<String, StripedCounter> mappingRedirects = new ConcurrentHashMap<String, StripedCounter>();
+
+    private final LatencyHistogram decisionLatency = new LatencyHistogram();
+    private final LatencyHistogram logoutLatency = new LatencyHistogram();
+
+    public void loginDetected() {
+        loginsDetected.increment();
+    }
+
+    public void logoutDetected() {
+        logoutsDetected.increment();
+    }
+
+    public void redirectIssued(RedirectDecision decision) {
+        if (decision.isDefault()) {
+            defaultFallbacks.increment();
+            return;
+        }
+
+        StripedCounter counter = mappingRedirects.get(decision.getMappingId());
+        if (counter == null) {
+            StripedCounter newCounter = new StripedCounter();
+            counter = mappingRedirects.putIfAbsent(decision.getMappingId(), newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.increment();
+    }
+
+    public void identityNotFound() {
+        identitiesNotFound.increment();
+    }
+
+    public void decisionTime(long nanos) {
+        decisionLatency.record(nanos);
+    }
+
+    public void logoutTime(long nanos) {
+        logoutLatency.record(nanos);
+    }
+
+    public long getLoginsDetected() {
+        return loginsDetected.sum();
+    }
+
+    public long getLogoutsDetected() {
+        return logoutsDetected.sum();
+    }
+
+    public long getDefaultFallbacks() {
+        return defaultFallbacks.sum();
+    }
+
+    public long getIdentitiesNotFound() {
+        return identitiesNotFound.sum();
+    }
+
+    /**
+     * @return number of redirects for each mapping. Key is group of mapping (mappings with the same group in different scopes
+     *         are counted together) or "rule name".
+     */
+    public Map<String, Long> getMappingRedirects() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, StripedCounter> entry : mappingRedirects.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    public LatencyHistogram getDecisionLatency() {
+        return decisionLatency;
+    }
+
+    public LatencyHistogram getLogoutLatency() {
+        return logoutLatency;
+    }
+
+    /**
+     * Clear counters of mappings and rules, for example when configuration is replaced and some of them no longer exist.
+     */
+    public void resetMappingRedirects() {
+        mappingRedirects.clear();
+    }
+
+    public void reset() {
+        loginsDetected.reset();
+        logoutsDetected.reset();
+        defaultFallbacks.reset();
+        identitiesNotFound.reset();
+        mappingRedirects.clear();
+        decisionLatency.reset();
+        logoutLatency.reset();
+    }
+
+}
@@ -0,0 +1,291 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redirect URL compiled from URL of mapping when configuration is loaded. URL must be absolute path (starting with '/'),
+ * absolute http(s) URL or relative path (for example "portal/classic/home") without whitespace. Path of absolute URL is
+ * normalized (duplicate slashes and "." or ".." segments are removed), so that browser and container get canonical location.
+ * Relative path is kept as it is and container resolves it against URI of request. URL can contain placeholders, which are
+ * replaced when redirect is issued:
+ * <ul>
+ * <li>${user} - name of user, encoded as path segment. Name consisting only of dots is percent-encoded too, so it can't
+ * change the path.</li>
+ * <li>${portal} - name of portal container, for example "portal"</li>
+ * </ul>
+ * URL is split into literal segments and placeholders during compilation, so expanding it is only concatenation of segments.
+ * URL without placeholders is expanded to the same String instance.
+ *
+ * @version $Revision$
+ */
+public class RedirectTarget {
+
+    private static final String USER_PLACEHOLDER = "user";
+    private static final String PORTAL_PLACEHOLDER = "portal";
+
+    // Kinds of segments
+    private static final int LITERAL = 0;
+    private static final int USER = 1;
+    private static final int PORTAL = 2;
+
+    private final String template;
+
+    // Normalized URL if it doesn't contain placeholders, null otherwise
+    private final String constant;
+
+    private final String[] literals;
+    private final int[] kinds;
+    private final int literalLength;
+
+    private RedirectTarget(String template, String constant, String[] literals, int[] kinds, int literalLength) {
+        this.template = template;
+        this.constant = constant;
+        this.literals = literals;
+        this.kinds = kinds;
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * Compile redirect URL.
+     *
+     * @param url URL from configuration
+     * @return compiled target or null if url is null
+     * @throws IllegalArgumentException if URL is not valid
+     */
+    public static RedirectTarget compile(String url) {
+        if (url == null) {
+            return null;
+        }
+
+        String normalized = normalize(url.trim());
+
+        List<String> literals = new ArrayList<String>();
+        List<Integer> kinds = new ArrayList<Integer>();
+        int literalLength = 0;
+        int position = 0;
+        while (position < normalized.length()) {
+            int start = normalized.indexOf("${", position);
+            if (start < 0) {
+                start = normalized.length();
+            }
+            if (start > position) {
+                literals.add(normalized.substring(position, start));
+                kinds.add(LITERAL);
+                literalLength += start - position;
+            }
+            if (start == normalized.length()) {
+                break;
+            }
+
+            int end = normalized.indexOf('}', start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated placeholder in redirect URL " + url);
+            }
+            String name = normalized.substring(start + 2, end);
+            if (USER_PLACEHOLDER.equals(name)) {
+                kinds.add(USER);
+            } else if (PORTAL_PLACEHOLDER.equals(name)) {
+                kinds.add(PORTAL);
+            } else {
+                throw new IllegalArgumentException("Unknown placeholder ${" + name + "} in redirect URL " + url
+                        + ". Supported placeholders are ${" + USER_PLACEHOLDER + "} and ${" + PORTAL_PLACEHOLDER + "}");
+            }
+            literals.add(null);
+            position = end + 1;
+        }
+
+        int[] kindArray = new int[kinds.size()];
+        for (int i = 0; i < kindArray.length; i++) {
+            kindArray[i] = kinds.get(i);
+        }
+        boolean constant = kindArray.length == 1 && kindArray[0] == LITERAL;
+        return new RedirectTarget(url, constant ? literals.get(0) : null, literals.toArray(new String[literals.size()]),
+                kindArray, literalLength);
+    }
+
+    /**
+     * @param userName name of user. Placeholder ${user} is removed if it's null.
+     * @param portalName name of portal container
+     * @return URL with replaced placeholders
+     */
+    public String expand(String userName, String portalName) {
+        if (constant != null) {
+            return constant;
+        }
+
+        StringBuilder builder = new StringBuilder(literalLength + 32);
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+            case LITERAL:
+                builder.append(literals[i]);
+                break;
+            case USER:
+                appendPathSegment(builder, userName);
+                break;
+            case PORTAL:
+                builder.append(portalName);
+                break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return true if URL doesn't contain placeholders
+     */
+    public boolean isConstant() {
+        return constant != null;
+    }
+
+    /**
+     * @return URL from configuration
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    // Validate URL and normalize its path
+    private static String normalize(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c <= ' ' || c == 0x7f) {
+                throw new IllegalArgumentException("Redirect URL contains whitespace or control character: " + url);
+            }
+        }
+
+        int pathStart;
+        if (url.startsWith("/")) {
+            if (url.startsWith("//")) {
+                throw new IllegalArgumentException("Redirect URL must not be network-path reference: " + url);
+            }
+            pathStart = 0;
+        } else if (url.regionMatches(true, 0, "http://", 0, 7) || url.regionMatches(true, 0, "https://", 0, 8)) {
+            // Scheme is case-insensitive
+            int authorityStart = url.indexOf("//") + 2;
+            pathStart = url.indexOf('/', authorityStart);
+            if (pathStart < 0) {
+                return url;
+            }
+        } else {
+            int colon = url.indexOf(':');
+            int slash = url.indexOf('/');
+            if (colon >= 0 && (slash < 0 || colon < slash)) {
+                throw new IllegalArgumentException("Redirect URL must be path or http(s) URL: " + url);
+            }
+            // Relative path is resolved by container against URI of request, so its ".." segments are significant
+            return url;
+        }
+
+        int pathEnd = url.length();
+        for (int i = pathStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                pathEnd = i;
+                break;
+            }
+        }
+
+        String path = normalizePath(url.substring(pathStart, pathEnd), url);
+        return url.substring(0, pathStart) + path + url.substring(pathEnd);
+    }
+
+    private static String normalizePath(String path, String url) {
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.split("/")) {
+            if (segment.length() == 0 || ".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment)) {
+                if (segments.isEmpty()) {
+                    throw new IllegalArgumentException("Redirect URL points above root: " + url);
+                }
+                segments.remove(segments.size() - 1);
+            } else {
+                segments.add(segment);
+            }
+        }
+
+        StringBuilder builder = new StringBuilder(path.length());
+        for (String segment : segments) {
+            builder.append('/').append(segment);
+        }
+        // Keep trailing slash, which is significant for portal URLs like /portal/public/classic/
+        if (segments.isEmpty() || path.endsWith("/") || path.endsWith("/.") || path.endsWith("/..")) {
+            builder.append('/');
+        }
+        return builder.toString();
+    }
+
+    private static void appendPathSegment(StringBuilder builder, String value) {
+        if (value == null) {
+            return;
+        }
+        if (isDotSegment(value)) {
+            // "." and ".." would be resolved as relative path by browser
+            for (int i = 0; i < value.length(); i++) {
+                builder.append("%2E");
+            }
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!isUnreserved(c)) {
+                try {
+                    builder.append(URLEncoder.encode(value, "UTF-8").replace("+", "%20"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+                return;
+            }
+        }
+        builder.append(value);
+    }
+
+    private static boolean isDotSegment(String value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_'
+                || c == '~';
+    }
+
+}
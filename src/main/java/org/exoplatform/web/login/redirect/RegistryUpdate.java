@@ -0,0 +1,86 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.io.Serializable;
+
+/**
+ * Change of {@link SessionUserRegistry} replicated to other nodes of cluster by {@link ReplicatedSessionUserRegistry}.
+ *
+ * @version $Revision$
+ */
+public class RegistryUpdate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        PUT_USER, REMOVE_USER, PUT_LOGOUT_URL, REMOVE_LOGOUT_URL
+    }
+
+    private final Type type;
+    private final String key;
+    private final String value;
+    private final long sessionTimeout;
+
+    /**
+     * @param type type of change
+     * @param key session ID for changes of users, user name for changes of logout URLs
+     * @param value user name or logout URL. It's null for removals.
+     * @param sessionTimeout session timeout in milliseconds for {@link Type#PUT_USER}
+     */
+    public RegistryUpdate(Type type, String key, String value, long sessionTimeout) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * @return true if this update is about session, false if it's about logout URL of user
+     */
+    public boolean isSessionUpdate() {
+        return type == Type.PUT_USER || type == Type.REMOVE_USER;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[" + key + "=" + value + "]";
+    }
+
+}
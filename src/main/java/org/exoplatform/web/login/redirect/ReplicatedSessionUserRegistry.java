@@ -0,0 +1,316 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+
+/**
+ * {@link SessionUserRegistry} replicated between nodes of cluster, so that logout request processed by different node than
+ * login is still redirected to correct page.<br />
+ * Every node keeps full copy of registry in {@link LocalSessionUserRegistry} (near cache), so reads never leave the node.
+ * Changes are applied to near cache immediately and collected in pending batch, which is sent to other nodes through
+ * {@link ReplicationChannel} every "replicationFlushInterval" milliseconds (default 100) or when it contains
+ * "replicationBatchSize" changes (default 100). Changes of the same key in one batch are coalesced, so for example login
+ * and logout in the same interval are sent as one invalidation. With interval 0, every change is sent immediately. Batches
+ * are always sent by background thread, request threads never wait for the channel.<br />
+ * New entries are sent with their values (user name or logout URL, both short), so node processing logout finds them in its
+ * near cache without remote call. Removals are sent as invalidations.<br />
+ * Channel is created from required value-param replicationChannel. This module doesn't contain any channel over network,
+ * {@link InProcessReplicationChannel} connects only registries in the same JVM. ID of node is value-param nodeName or
+ * random ID if it's not configured.
+ *
+ * @version $Revision$
+ */
+public class ReplicatedSessionUserRegistry implements SessionUserRegistry {
+    private static final Logger log = LoggerFactory.getLogger(ReplicatedSessionUserRegistry.class);
+
+    private final String nodeId;
+    private final LocalSessionUserRegistry near;
+    private final ReplicationChannel channel;
+    private final int batchSize;
+    private final long flushInterval;
+
+    // Changes waiting for replication. Key is type of entry (session or user) with its key, so only last change of each
+    // entry is sent.
+    private final Map<String, RegistryUpdate> pending = new LinkedHashMap<String, RegistryUpdate>();
+
+    private final Object sendLock = new Object();
+
+    private volatile ScheduledExecutorService flusher;
+
+    // Full batch was handed to flusher and it wasn't sent yet
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flushRequested.set(false);
+            flush();
+        }
+    };
+
+    public ReplicatedSessionUserRegistry(InitParams params) {
+        this(getNodeId(params), new LocalSessionUserRegistry(params), createChannel(params),
+                LoginRedirectService.getIntParam(params, "replicationBatchSize", 100),
+                LoginRedirectService.getIntParam(params, "replicationFlushInterval", 100));
+    }
+
+    /**
+     * @param nodeId ID of this node
+     * @param near local copy of registry
+     * @param channel channel to other nodes
+     * @param batchSize number of pending changes, which are sent immediately
+     * @param flushInterval maximal time in milliseconds for which change waits for replication
+     */
+    public ReplicatedSessionUserRegistry(String nodeId, LocalSessionUserRegistry near, ReplicationChannel channel,
+            int batchSize, long flushInterval) {
+        this.nodeId = nodeId;
+        this.near = near;
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+    }
+
+    private static String getNodeId(InitParams params) {
+        ValueParam param = params.getValueParam("nodeName");
+        return param == null ? UUID.randomUUID().toString() : param.getValue().trim();
+    }
+
+    private static ReplicationChannel createChannel(InitParams params) {
+        ValueParam param = params.getValueParam("replicationChannel");
+        if (param == null) {
+            throw new IllegalArgumentException("Value-param replicationChannel of ReplicatedSessionUserRegistry is required. "
+                    + "It must contain class implementing " + ReplicationChannel.class.getName()
+                    + " over transport of the cluster.");
+        }
+
+        String className = param.getValue().trim();
+        ReplicationChannel channel;
+        try {
+            Class<?> channelClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            channel = (ReplicationChannel) channelClass.getConstructor(InitParams.class).newInstance(params);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Can't create replication channel of class " + className, e);
+        }
+
+        if (channel instanceof InProcessReplicationChannel) {
+            log.warn("ReplicatedSessionUserRegistry uses " + className + ", which connects only registries in the same JVM. "
+                    + "Changes of registry are NOT replicated to other nodes of cluster.");
+        }
+        return channel;
+    }
+
+    public void start() {
+        channel.connect(nodeId, new ReplicationChannel.Receiver() {
+            public void receive(List<RegistryUpdate> updates) {
+                apply(updates);
+            }
+        });
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "LoginRedirectService registry replication");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (flushInterval > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+        flusher = executor;
+    }
+
+    public void stop() {
+        ScheduledExecutorService executor = flusher;
+        flusher = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        flush();
+        channel.disconnect(nodeId);
+    }
+
+    public String getUser(String sessionId) {
+        return near.getUser(sessionId);
+    }
+
+    public void putUser(String sessionId, String userName, long sessionTimeout) {
+        near.putUser(sessionId, userName, sessionTimeout);
+        replicate(new RegistryUpdate(RegistryUpdate.Type.PUT_USER, sessionId, userName, sessionTimeout));
+    }
+
+    public String removeUser(String sessionId) {
+        String userName = near.removeUser(sessionId);
+        replicate(new RegistryUpdate(RegistryUpdate.Type.REMOVE_USER, sessionId, null, 0));
+        return userName;
+    }
+
+    public void sessionDestroyed(String sessionId) {
+        near.sessionDestroyed(sessionId);
+        replicate(new RegistryUpdate(RegistryUpdate.Type.REMOVE_USER, sessionId, null, 0));
+    }
+
+    public void putLogoutURL(String userName, String logoutURL) {
+        near.putLogoutURL(userName, logoutURL);
+        replicate(new RegistryUpdate(RegistryUpdate.Type.PUT_LOGOUT_URL, userName, logoutURL, 0));
+    }
+
+    public String removeLogoutURL(String userName) {
+        String logoutURL = near.removeLogoutURL(userName);
+        replicate(new RegistryUpdate(RegistryUpdate.Type.REMOVE_LOGOUT_URL, userName, null, 0));
+        return logoutURL;
+    }
+
+    public int getSessionCount() {
+        return near.getSessionCount();
+    }
+
+    public int getLogoutURLCount() {
+        return near.getLogoutURLCount();
+    }
+
+    public long getDestroyedEvictions() {
+        return near.getDestroyedEvictions();
+    }
+
+    public long getExpiredEvictions() {
+        return near.getExpiredEvictions();
+    }
+
+    public long getOverflowEvictions() {
+        return near.getOverflowEvictions();
+    }
+
+    /**
+     * Clear copy of registry on this node. Other nodes are not affected.
+     */
+    public void clear() {
+        synchronized (pending) {
+            pending.clear();
+        }
+        near.clear();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return number of changes waiting for replication
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Send pending changes to other nodes.
+     */
+    public void flush() {
+        // Batches are sent one at a time, so other nodes receive them in order in which they were taken
+        synchronized (sendLock) {
+            List<RegistryUpdate> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<RegistryUpdate>(pending.values());
+                pending.clear();
+            }
+
+            try {
+                channel.send(nodeId, batch);
+            } catch (RuntimeException e) {
+                // Other nodes will fall back to identity registry or default URL for these entries
+                log.error("Can't replicate " + batch.size() + " changes of logged users", e);
+            }
+        }
+    }
+
+    // Apply changes made by other node
+    private void apply(List<RegistryUpdate> updates) {
+        for (RegistryUpdate update : updates) {
+            switch (update.getType()) {
+            case PUT_USER:
+                near.putUser(update.getKey(), update.getValue(), update.getSessionTimeout());
+                break;
+            case REMOVE_USER:
+                near.removeUser(update.getKey());
+                break;
+            case PUT_LOGOUT_URL:
+                near.putLogoutURL(update.getKey(), update.getValue());
+                break;
+            case REMOVE_LOGOUT_URL:
+                near.removeLogoutURL(update.getKey());
+                break;
+            }
+        }
+    }
+
+    private void replicate(RegistryUpdate update) {
+        boolean full;
+        synchronized (pending) {
+            String key = (update.isSessionUpdate() ? "S:" : "U:") + update.getKey();
+            // Remove first, so that coalesced change is ordered by time of its last modification
+            pending.remove(key);
+            pending.put(key, update);
+            full = flushInterval <= 0 || pending.size() >= batchSize;
+        }
+        if (full) {
+            requestFlush();
+        }
+    }
+
+    // Hand pending changes to flusher thread. Changes made before start or after stop are sent by the next flush.
+    private void requestFlush() {
+        ScheduledExecutorService executor = flusher;
+        if (executor != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(flushTask);
+            } catch (RejectedExecutionException e) {
+                // Registry is stopping, pending changes are sent by stop()
+                flushRequested.set(false);
+            }
+        }
+    }
+
+}
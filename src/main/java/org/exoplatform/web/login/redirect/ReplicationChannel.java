@@ -0,0 +1,66 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.List;
+
+/**
+ * Transport of {@link RegistryUpdate}s between nodes of cluster used by {@link ReplicatedSessionUserRegistry}. Implementation
+ * delivers updates sent by one node to all other connected nodes. It needs public constructor with
+ * {@link org.exoplatform.container.xml.InitParams} argument, because it's created from parameters of
+ * {@link LoginRedirectService}.
+ *
+ * @version $Revision$
+ */
+public interface ReplicationChannel {
+
+    /**
+     * Receiver of updates sent by other nodes.
+     */
+    interface Receiver {
+        void receive(List<RegistryUpdate> updates);
+    }
+
+    /**
+     * Connect node to cluster.
+     *
+     * @param nodeId ID of this node
+     * @param receiver receiver of updates sent by other nodes
+     */
+    void connect(String nodeId, Receiver receiver);
+
+    /**
+     * Send batch of updates to all other nodes. Batches of one node are sent one at a time. Method may be called from request
+     * thread, so implementation over network should only hand batch over to its transport and not wait for other nodes.
+     *
+     * @param nodeId ID of sending node
+     * @param updates updates in order in which they were made
+     */
+    void send(String nodeId, List<RegistryUpdate> updates);
+
+    /**
+     * @param nodeId ID of node
+     */
+    void disconnect(String nodeId);
+
+}
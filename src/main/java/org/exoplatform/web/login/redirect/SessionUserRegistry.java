@@ -0,0 +1,120 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import org.picocontainer.Startable;
+
+/**
+ * Registry of users logged through {@link LoginRedirectFilter}. It remembers which user is logged in which HTTP session
+ * (user can't be obtained from session during logout, because session is already invalidated) and logout URL of each user
+ * resolved during his login by {@link LoginRedirectService}.<br />
+ * Registry is owned by {@link LoginRedirectService} and its implementation is selected by value-param sessionUserRegistry.
+ * Implementation needs public constructor with {@link org.exoplatform.container.xml.InitParams} argument. Default
+ * implementation {@link LocalSessionUserRegistry} keeps entries in memory of current node. In cluster, where logout request
+ * can be processed by different node than login, {@link ReplicatedSessionUserRegistry} can be used.<br />
+ * All methods are called from request threads, so they must not block on remote calls.
+ *
+ * @version $Revision$
+ */
+public interface SessionUserRegistry extends Startable {
+
+    /**
+     * Name of servlet context attribute where registry is published for {@link LoginRedirectSessionListener}
+     */
+    String ATTRIBUTE_NAME = SessionUserRegistry.class.getName();
+
+    /**
+     * @param sessionId ID of HTTP session
+     * @return name of user logged in given session or null if we don't know about any user
+     */
+    String getUser(String sessionId);
+
+    /**
+     * Register user for given session.
+     *
+     * @param sessionId ID of HTTP session
+     * @param userName name of logged user
+     * @param sessionTimeout max inactive interval of session in milliseconds or non-positive value if session never expires
+     */
+    void putUser(String sessionId, String userName, long sessionTimeout);
+
+    /**
+     * Remove entry of session after logout.
+     *
+     * @param sessionId ID of HTTP session
+     * @return name of user logged in given session or null if we don't know about any user
+     */
+    String removeUser(String sessionId);
+
+    /**
+     * Remove entry of session, which was destroyed by servlet container.
+     *
+     * @param sessionId ID of HTTP session
+     */
+    void sessionDestroyed(String sessionId);
+
+    /**
+     * @param userName name of user
+     * @param logoutURL URL where user should be redirected after his logout
+     */
+    void putLogoutURL(String userName, String logoutURL);
+
+    /**
+     * Remove logout URL of user during his logout.
+     *
+     * @param userName name of user
+     * @return logout URL resolved during login of user or null if it's not known
+     */
+    String removeLogoutURL(String userName);
+
+    /**
+     * @return number of sessions with logged user known to this node
+     */
+    int getSessionCount();
+
+    /**
+     * @return number of users with logout URL known to this node
+     */
+    int getLogoutURLCount();
+
+    /**
+     * @return number of session entries removed, because servlet container destroyed the session
+     */
+    long getDestroyedEvictions();
+
+    /**
+     * @return number of session entries removed, because they were not accessed for longer than timeout of their session
+     */
+    long getExpiredEvictions();
+
+    /**
+     * @return number of session entries removed, because registry was full
+     */
+    long getOverflowEvictions();
+
+    /**
+     * Remove all entries known to this node.
+     */
+    void clear();
+
+}
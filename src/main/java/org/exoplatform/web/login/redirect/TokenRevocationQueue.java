@@ -0,0 +1,289 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+
+/**
+ * Asynchronous revocation of remember-me tokens. Tokens are put into bounded queue during logout and deleted from token store
+ * by background worker in batches, so logout request doesn't wait for round-trip to token store. Until token is deleted, it's
+ * kept in tombstone set and {@link LoginRedirectFilter} hides it from following requests, so revoked token can't be used for
+ * login even before it's deleted.<br />
+ * If queue is full, token is deleted synchronously in the calling thread by synchronous revoker. If deletion fails, tombstone
+ * is kept and worker tries to delete the token again after retry delay. Tombstone is removed only when the token is deleted
+ * or queue is stopped.<br />
+ * Tombstones are kept in memory of this JVM only. Other cluster nodes don't see them, so they accept revoked token until
+ * it's deleted from shared token store.
+ *
+ * @version $Revision$
+ */
+public class TokenRevocationQueue {
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationQueue.class);
+
+    static final long DEFAULT_RETRY_DELAY = 1000;
+
+    private final BlockingQueue<String> queue;
+    private final int batchSize;
+    private final long retryDelayMillis;
+    private final TokenRevoker revoker;
+    private final TokenRevoker synchronousRevoker;
+
+    // Failed deletions are retried, so they are logged as summary
+    private final AggregatedWarning failureWarning = new AggregatedWarning(log,
+            "failed deletions of revoked tokens from token store. Tokens are still rejected and deletion will be retried",
+            "error", 10000);
+
+    private final Set<String> tombstones = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong revoked = new AtomicLong();
+    private final AtomicLong synchronousRevocations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private Thread worker;
+
+    /**
+     * @param capacity maximal number of tokens waiting for deletion
+     * @param batchSize maximal number of tokens deleted by worker in one batch
+     * @param revoker revoker, which deletes tokens from token store
+     */
+    public TokenRevocationQueue(int capacity, int batchSize, TokenRevoker revoker) {
+        this(capacity, batchSize, DEFAULT_RETRY_DELAY, revoker);
+    }
+
+    /**
+     * @param capacity maximal number of tokens waiting for deletion
+     * @param batchSize maximal number of tokens deleted by worker in one batch
+     * @param retryDelayMillis pause of worker after batch with failed deletions, before they are retried
+     * @param revoker revoker, which deletes tokens from token store
+     */
+    public TokenRevocationQueue(int capacity, int batchSize, long retryDelayMillis, TokenRevoker revoker) {
+        this(capacity, batchSize, retryDelayMillis, revoker, revoker);
+    }
+
+    /**
+     * @param capacity maximal number of tokens waiting for deletion
+     * @param batchSize maximal number of tokens deleted by worker in one batch
+     * @param retryDelayMillis pause of worker after batch with failed deletions, before they are retried
+     * @param revoker revoker used by worker thread and by {@link #stop()}
+     * @param synchronousRevoker revoker used by thread calling {@link #revoke(String)} when queue is full
+     */
+    public TokenRevocationQueue(int capacity, int batchSize, long retryDelayMillis, TokenRevoker revoker,
+            TokenRevoker synchronousRevoker) {
+        this.queue = new ArrayBlockingQueue<String>(capacity);
+        this.batchSize = batchSize;
+        this.retryDelayMillis = retryDelayMillis;
+        this.revoker = revoker;
+        this.synchronousRevoker = synchronousRevoker;
+    }
+
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(new Runnable() {
+            public void run() {
+                List<String> batch = new ArrayList<String>(batchSize);
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        batch.add(queue.take());
+                        queue.drainTo(batch, batchSize - 1);
+                        List<String> failed = revokeBatch(batch);
+                        batch.clear();
+                        if (!failed.isEmpty()) {
+                            // Token store or portal container is not available, so wait before next attempt
+                            Thread.sleep(retryDelayMillis);
+                            retry(failed);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Stopped. Tokens remaining in queue are revoked by stop()
+                }
+            }
+        }, "LoginRedirectFilter token revocation");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stop worker and synchronously revoke tokens remaining in queue.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+            worker = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<String> remaining = new ArrayList<String>();
+        queue.drainTo(remaining);
+        int failed = revokeBatch(remaining).size();
+        if (failed > 0) {
+            log.error(failed + " revoked tokens couldn't be deleted from token store before stop of revocation queue");
+        }
+        tombstones.clear();
+        failureWarning.flush();
+    }
+
+    /**
+     * Revoke token. Token is rejected immediately and deleted from token store asynchronously or synchronously if queue is full.
+     *
+     * @param token token to revoke
+     * @return true if token was queued, false if it was deleted synchronously
+     */
+    public boolean revoke(String token) {
+        tombstones.add(token);
+        if (queue.offer(token)) {
+            updatePeakQueueDepth();
+            return true;
+        }
+
+        // Backpressure: queue is full, so this logout waits for token store
+        synchronousRevocations.incrementAndGet();
+        if (revokeToken(synchronousRevoker, token)) {
+            tombstones.remove(token);
+        }
+        return false;
+    }
+
+    /**
+     * @param token token
+     * @return true if token was revoked, but it may be still present in token store
+     */
+    public boolean isRevoked(String token) {
+        return tombstones.contains(token);
+    }
+
+    /**
+     * @return true if there are revoked tokens, which are not deleted from token store yet
+     */
+    public boolean hasTombstones() {
+        return !tombstones.isEmpty();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    public int getTombstoneCount() {
+        return tombstones.size();
+    }
+
+    public long getRevokedCount() {
+        return revoked.get();
+    }
+
+    public long getSynchronousRevocations() {
+        return synchronousRevocations.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    // Return tokens, which couldn't be deleted
+    private List<String> revokeBatch(List<String> batch) {
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        batches.incrementAndGet();
+        List<String> failed = null;
+        for (String token : batch) {
+            if (revokeToken(revoker, token)) {
+                tombstones.remove(token);
+            } else {
+                if (failed == null) {
+                    failed = new ArrayList<String>();
+                }
+                failed.add(token);
+            }
+        }
+        return failed == null ? Collections.<String>emptyList() : failed;
+    }
+
+    // Put failed tokens back to queue. If queue is full, token stays only in tombstones until queue is stopped.
+    private void retry(List<String> failed) {
+        int dropped = 0;
+        for (String token : failed) {
+            if (!queue.offer(token)) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            log.error(dropped + " revoked tokens can't be retried, because revocation queue is full. They will be rejected "
+                    + "until filter is destroyed.");
+        }
+    }
+
+    private boolean revokeToken(TokenRevoker tokenRevoker, String token) {
+        try {
+            tokenRevoker.revoke(token);
+            revoked.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Can't delete revoked token from token store", e);
+            }
+            failureWarning.warn(String.valueOf(e));
+            return false;
+        }
+    }
+
+    private void updatePeakQueueDepth() {
+        int depth = queue.size();
+        int peak = peakQueueDepth.get();
+        while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth)) {
+            peak = peakQueueDepth.get();
+        }
+    }
+
+}
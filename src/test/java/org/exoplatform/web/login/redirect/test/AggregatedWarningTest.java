@@ -0,0 +1,90 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.web.login.redirect.AggregatedWarning;
+import org.gatein.common.logging.LoggerFactory;
+
+/**
+ * @version $Revision$
+ */
+public class AggregatedWarningTest extends TestCase
+{
+   private final List<String> reports = new ArrayList<String>();
+
+   private final AggregatedWarning warning = new AggregatedWarning(LoggerFactory.getLogger(AggregatedWarningTest.class),
+      "identities missing", "user", 10000)
+   {
+      @Override
+      protected void report(long count, long elapsedMillis, String detail)
+      {
+         reports.add(count + "/" + elapsedMillis + "/" + detail);
+      }
+   };
+
+   public void testFirstOccurrenceReportedImmediately()
+   {
+      assertTrue(warning.warn("root", 100000));
+      assertEquals(1, reports.size());
+      assertEquals("1/0/root", reports.get(0));
+   }
+
+   public void testOccurrencesAggregatedInInterval()
+   {
+      warning.warn("root", 100000);
+      assertFalse(warning.warn("john", 101000));
+      assertFalse(warning.warn("mary", 105000));
+      assertFalse(warning.warn("demo", 109999));
+      assertEquals(1, reports.size());
+
+      assertTrue(warning.warn("root", 110000));
+      assertEquals(2, reports.size());
+
+      // Time is measured from first occurrence of the summary
+      assertEquals("4/9000/john", reports.get(1));
+   }
+
+   public void testBurstReportedByFlush()
+   {
+      warning.warn("root", 100000);
+      warning.warn("john", 101000);
+      warning.warn("mary", 102000);
+      assertEquals(1, reports.size());
+
+      // Nothing else happens, so pending occurrences are reported when owner is stopped
+      warning.flush();
+      assertEquals(2, reports.size());
+      assertTrue(reports.get(1).startsWith("2/"));
+      assertTrue(reports.get(1).endsWith("/john"));
+
+      // There is nothing to report any more
+      warning.flush();
+      assertEquals(2, reports.size());
+   }
+
+}
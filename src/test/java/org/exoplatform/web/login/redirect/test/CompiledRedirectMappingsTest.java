@@ -0,0 +1,113 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.web.login.redirect.CompiledRedirectMappings;
+import org.exoplatform.web.login.redirect.MappingParam;
+
+/**
+ * @version $Revision$
+ */
+public class CompiledRedirectMappingsTest extends TestCase
+{
+   private static final String[] TYPES = {"*", "member", "manager", "validator"};
+
+   public void testFirstMappingWins()
+   {
+      Map<MembershipEntry, MappingParam> mappings = new LinkedHashMap<MembershipEntry, MappingParam>();
+      addMapping(mappings, "manager:/organization/management/executive-board");
+      addMapping(mappings, "*:/platform/administrators");
+      addMapping(mappings, "*:/platform/users");
+      CompiledRedirectMappings compiled = new CompiledRedirectMappings(mappings);
+
+      assertEquals(0, compiled.findMappingIndex(memberships("member:/platform/users", "manager:/organization/management/executive-board")));
+      assertEquals(1, compiled.findMappingIndex(memberships("member:/platform/users", "member:/platform/administrators")));
+      assertEquals(2, compiled.findMappingIndex(memberships("member:/platform/users", "member:/organization/management/executive-board")));
+      assertEquals(-1, compiled.findMappingIndex(memberships("member:/platform/guests")));
+   }
+
+   public void testSameResultAsIdentity()
+   {
+      Random random = new Random(42);
+      Map<MembershipEntry, MappingParam> mappings = new LinkedHashMap<MembershipEntry, MappingParam>();
+      for (int i = 0; i < 200; i++)
+      {
+         addMapping(mappings, TYPES[random.nextInt(TYPES.length)] + ":/group" + random.nextInt(100));
+      }
+      CompiledRedirectMappings compiled = new CompiledRedirectMappings(mappings);
+      List<MembershipEntry> keys = new ArrayList<MembershipEntry>(mappings.keySet());
+
+      for (int i = 0; i < 500; i++)
+      {
+         Collection<MembershipEntry> userMemberships = new HashSet<MembershipEntry>();
+         for (int j = random.nextInt(20); j >= 0; j--)
+         {
+            userMemberships.add(MembershipEntry.parse(TYPES[1 + random.nextInt(TYPES.length - 1)] + ":/group" + random.nextInt(100)));
+         }
+         Identity identity = new Identity("user" + i, userMemberships);
+
+         int expected = -1;
+         for (int k = 0; k < keys.size(); k++)
+         {
+            if (identity.isMemberOf(keys.get(k)))
+            {
+               expected = k;
+               break;
+            }
+         }
+         assertEquals(expected, compiled.findMappingIndex(identity.getMemberships()));
+      }
+   }
+
+   private void addMapping(Map<MembershipEntry, MappingParam> mappings, String groupName)
+   {
+      MappingParam mapping = new MappingParam();
+      mapping.setGroupName(groupName);
+      mapping.setLoginURL("/login/" + groupName);
+      mapping.setLogoutURL("/logout/" + groupName);
+      mappings.put(MembershipEntry.parse(groupName), mapping);
+   }
+
+   private Collection<MembershipEntry> memberships(String... memberships)
+   {
+      Collection<MembershipEntry> result = new HashSet<MembershipEntry>();
+      for (String membership : memberships)
+      {
+         result.add(MembershipEntry.parse(membership));
+      }
+      return result;
+   }
+
+}
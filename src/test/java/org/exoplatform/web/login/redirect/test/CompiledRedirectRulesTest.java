@@ -0,0 +1,157 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.web.login.redirect.CompiledRedirectRules;
+import org.exoplatform.web.login.redirect.MappingParam;
+import org.exoplatform.web.login.redirect.RedirectConfiguration;
+import org.exoplatform.web.login.redirect.RedirectMappingCompiler;
+import org.exoplatform.web.login.redirect.RedirectMappingConfig;
+import org.exoplatform.web.login.redirect.RedirectRule;
+
+/**
+ * @version $Revision$
+ */
+public class CompiledRedirectRulesTest extends TestCase
+{
+   private final List<RedirectRule> rules = new ArrayList<RedirectRule>();
+
+   private RedirectRule addRule(String name, String allOf, String anyOf, String noneOf, int priority)
+   {
+      RedirectRule rule = new RedirectRule();
+      rule.setName(name);
+      rule.setAllOf(allOf);
+      rule.setAnyOf(anyOf);
+      rule.setNoneOf(noneOf);
+      rule.setPriority(priority);
+      rule.setLoginURL("/portal/" + name);
+      rule.setLogoutURL("/portal/classic/home");
+      rules.add(rule);
+      return rule;
+   }
+
+   private String findRule(CompiledRedirectRules compiled, MembershipEntry... memberships)
+   {
+      int index = compiled.findRuleIndex(Arrays.asList(memberships));
+      return index < 0 ? null : compiled.getRule(index).getName();
+   }
+
+   public void testConditions()
+   {
+      addRule("sales", "manager:/org/sales, member:/platform/users", null, "*:/platform/guests", 0);
+      addRule("staff", null, "*:/org/sales, *:/org/hr", null, 0);
+      CompiledRedirectRules compiled = new CompiledRedirectRules(rules);
+      assertEquals(5, compiled.getBitCount());
+
+      MembershipEntry salesManager = new MembershipEntry("/org/sales", "manager");
+      MembershipEntry user = new MembershipEntry("/platform/users", "member");
+      MembershipEntry guest = new MembershipEntry("/platform/guests", "member");
+
+      assertEquals("sales", findRule(compiled, salesManager, user));
+      assertEquals("staff", findRule(compiled, salesManager, user, guest));
+      assertEquals("staff", findRule(compiled, salesManager));
+      assertEquals("staff", findRule(compiled, new MembershipEntry("/org/hr", "member")));
+      assertNull(findRule(compiled, user));
+      assertNull(findRule(compiled));
+   }
+
+   public void testPriority()
+   {
+      addRule("low", null, "*:/platform/users", null, 1);
+      addRule("high", null, "*:/platform/users", null, 10);
+      addRule("high2", null, "*:/platform/users", null, 10);
+      CompiledRedirectRules compiled = new CompiledRedirectRules(rules);
+
+      assertEquals("high", findRule(compiled, new MembershipEntry("/platform/users", "member")));
+      assertEquals("high2", compiled.getRule(1).getName());
+      assertEquals("low", compiled.getRule(2).getName());
+   }
+
+   public void testManyMemberships()
+   {
+      for (int i = 0; i < 1000; i++)
+      {
+         addRule("rule" + i, "*:/group" + i + ", manager:/group" + (i + 1), null, "*:/excluded" + i, 0);
+      }
+      CompiledRedirectRules compiled = new CompiledRedirectRules(rules);
+      assertEquals(3000, compiled.getBitCount());
+
+      assertEquals("rule700", findRule(compiled, new MembershipEntry("/group700", "member"), new MembershipEntry("/group701",
+         "manager")));
+      assertNull(findRule(compiled, new MembershipEntry("/group700", "member"), new MembershipEntry("/group701", "manager"),
+         new MembershipEntry("/excluded700", "member")));
+   }
+
+   public void testRulesBeforeMappings()
+   {
+      addRule("sales", "manager:/org/sales", null, null, 0);
+      addRule("never", "manager:/org/sales", null, "*:/org/sales", 0);
+
+      List<MappingParam> mappings = new ArrayList<MappingParam>();
+      MappingParam mapping = new MappingParam();
+      mapping.setGroupName("*:/org/sales");
+      mapping.setLoginURL("/portal/sales-members");
+      mappings.add(mapping);
+
+      RedirectMappingConfig config = new RedirectMappingConfig();
+      config.setRedirectMappings(mappings);
+      config.setRedirectRules(rules);
+      RedirectMappingCompiler compiler = new RedirectMappingCompiler();
+      RedirectConfiguration configuration = compiler.compile(config, "/portal/classic/home", "/portal/classic/home");
+
+      assertEquals(1, configuration.getRulesCount());
+      assertEquals(1, compiler.getShadowedCount());
+      assertTrue(compiler.getProblems().get(0).startsWith("Rule #2"));
+
+      Collection<MembershipEntry> manager = Arrays.asList(new MembershipEntry("/org/sales", "manager"));
+      Collection<MembershipEntry> member = Arrays.asList(new MembershipEntry("/org/sales", "member"));
+      assertEquals("/portal/sales", configuration.resolve(manager).getLoginURL());
+      assertEquals("sales", configuration.resolve(manager).getGroupName());
+      assertEquals("/portal/sales-members", configuration.resolve(member).getLoginURL());
+   }
+
+   public void testInvalidRule()
+   {
+      addRule("empty", null, " , ", null, 0);
+      RedirectMappingConfig config = new RedirectMappingConfig();
+      config.setRedirectRules(rules);
+      try
+      {
+         new RedirectMappingCompiler().compile(config, "/portal/classic/home", "/portal/classic/home");
+         fail("Rule without memberships was compiled");
+      }
+      catch (IllegalArgumentException e)
+      {
+         assertTrue(e.getMessage().contains("Rule #1"));
+      }
+   }
+
+}
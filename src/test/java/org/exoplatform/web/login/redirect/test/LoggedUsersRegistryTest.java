@@ -0,0 +1,90 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.web.login.redirect.LocalSessionUserRegistry;
+import org.exoplatform.web.login.redirect.LoggedUsersRegistry;
+import org.exoplatform.web.login.redirect.LogoutTargetCache;
+import org.exoplatform.web.login.redirect.SessionUserRegistry;
+
+/**
+ * @version $Revision$
+ */
+public class LoggedUsersRegistryTest extends TestCase
+{
+   public void testSessionDestroyed()
+   {
+      LoggedUsersRegistry registry = new LoggedUsersRegistry(100, 60000, 60000);
+      registry.put("session1", "root", 1800000);
+      registry.put("session2", "john", 1800000);
+      assertEquals("root", registry.get("session1"));
+      assertEquals(2, registry.size());
+
+      registry.sessionDestroyed("session1");
+      registry.sessionDestroyed("unknown");
+      assertNull(registry.get("session1"));
+      assertEquals(1, registry.size());
+      assertEquals(1, registry.getDestroyedEvictions());
+   }
+
+   public void testExpiration()
+   {
+      LoggedUsersRegistry registry = new LoggedUsersRegistry(100, 60000, 60000);
+      registry.put("session1", "root", 0);
+      registry.put("session2", "john", 1800000);
+
+      registry.sweep(System.currentTimeMillis() + 120000);
+      assertNull(registry.get("session1"));
+      assertEquals("john", registry.get("session2"));
+      assertEquals(1, registry.getExpiredEvictions());
+   }
+
+   public void testOverflow()
+   {
+      LoggedUsersRegistry registry = new LoggedUsersRegistry(10, 60000, 60000);
+      for (int i = 0; i < 20; i++)
+      {
+         registry.put("session" + i, "user" + i, 1800000);
+      }
+
+      assertTrue(registry.size() <= 10);
+      assertTrue(registry.getOverflowEvictions() >= 10);
+   }
+
+   public void testEvictionsOfSessionUserRegistry()
+   {
+      LoggedUsersRegistry loggedUsers = new LoggedUsersRegistry(100, 60000, 60000);
+      SessionUserRegistry registry = new LocalSessionUserRegistry(loggedUsers, new LogoutTargetCache(100));
+      registry.putUser("session1", "root", 1800000);
+      registry.sessionDestroyed("session1");
+      registry.putUser("session2", "john", 0);
+      loggedUsers.sweep(System.currentTimeMillis() + 120000);
+
+      assertEquals(1, registry.getDestroyedEvictions());
+      assertEquals(1, registry.getExpiredEvictions());
+      assertEquals(0, registry.getOverflowEvictions());
+   }
+
+}
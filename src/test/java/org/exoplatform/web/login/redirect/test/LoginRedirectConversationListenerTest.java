@@ -0,0 +1,54 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.security.ConversationRegistry;
+import org.exoplatform.services.security.ConversationState;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.web.login.redirect.LoginRedirectConversationListener;
+
+/**
+ * @version $Revision$
+ */
+public class LoginRedirectConversationListenerTest extends TestCase
+{
+   public void testLoginConsumedOnce() throws Exception
+   {
+      ConversationState state = new ConversationState(new Identity("root"));
+      assertFalse(LoginRedirectConversationListener.consumeLogin(state));
+
+      new LoginRedirectConversationListener().onEvent(
+         new Event<ConversationRegistry, ConversationState>("exo.core.security.ConversationRegistry.register", null, state));
+      assertTrue(LoginRedirectConversationListener.consumeLogin(state));
+      assertFalse(LoginRedirectConversationListener.consumeLogin(state));
+   }
+
+   public void testNoConversationState()
+   {
+      assertFalse(LoginRedirectConversationListener.consumeLogin(null));
+   }
+
+}
@@ -34,6 +34,7 @@ import org.exoplatform.services.security.Identity;
 import org.exoplatform.services.security.IdentityRegistry;
 import org.exoplatform.services.security.MembershipEntry;
 import org.exoplatform.web.login.redirect.LoginRedirectService;
+import org.exoplatform.web.login.redirect.RedirectMappingConfigParser;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -94,5 +95,43 @@ public class LoginRedirectServiceTest extends AbstractKernelTest
       assertEquals(loginRedirectService.getLogoutRedirectURL("mary"), "/portal/public/classic/defaultPage");      
    }
 
-}
+   public void testLogoutRedirectLocationResolvedDuringLogin()
+   {
+      assertEquals(loginRedirectService.getLoginRedirectURL("john"), "/portal/private/classic/organization/management");
+      identityRegistry.unregister("john");
+
+      assertEquals(loginRedirectService.getLogoutRedirectURL("john"), "/portal/public/classic/sitemap");
+
+      // Entry is removed after logout
+      assertEquals(loginRedirectService.getLogoutRedirectURL("john"), "/portal/public/classic/defaultPage");
+   }
 
+   public void testUpdateMappings() throws Exception
+   {
+      RedirectMappingConfigParser parser = new RedirectMappingConfigParser();
+      ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+      loginRedirectService.updateMappings(parser.parse(classLoader.getResourceAsStream("conf/reloaded-mappings.xml")));
+      String maryLogoutURL;
+      try
+      {
+         assertEquals(1, loginRedirectService.getMappingsCount());
+         assertEquals(loginRedirectService.getLoginRedirectURL("mary"), "/portal/private/classic/guests");
+         assertEquals(loginRedirectService.getLoginRedirectURL("john"), "/portal/private/classic/defaultPage");
+         assertEquals(loginRedirectService.getLogoutRedirectURL("john"), "/portal/public/classic/reloadedDefaultPage");
+      }
+      finally
+      {
+         loginRedirectService.updateMappings(parser.parse(classLoader.getResourceAsStream("conf/redirect-configuration.xml")));
+
+         // Consume logout URL of mary, so it isn't left for other tests sharing the container
+         maryLogoutURL = loginRedirectService.getLogoutRedirectURL("mary");
+      }
+
+      // Logout URL resolved during login is kept after reload
+      assertEquals(maryLogoutURL, "/portal/public/classic/guests");
+      assertEquals(2, loginRedirectService.getMappingsCount());
+      assertEquals(loginRedirectService.getLoginRedirectURL("john"), "/portal/private/classic/organization/management");
+   }
+
+}
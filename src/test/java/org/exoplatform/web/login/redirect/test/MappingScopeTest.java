@@ -0,0 +1,113 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.web.login.redirect.MappingParam;
+import org.exoplatform.web.login.redirect.MappingScope;
+import org.exoplatform.web.login.redirect.RedirectConfiguration;
+import org.exoplatform.web.login.redirect.RedirectMappingConfig;
+
+/**
+ * @version $Revision$
+ */
+public class MappingScopeTest extends TestCase
+{
+   private final Collection<MembershipEntry> administrator = Arrays.<MembershipEntry>asList(new MembershipEntry(
+      "/platform/administrators"));
+
+   private final Collection<MembershipEntry> user = Arrays.<MembershipEntry>asList(new MembershipEntry("/platform/users"));
+
+   private RedirectConfiguration configuration;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      List<MappingParam> mappings = new ArrayList<MappingParam>();
+      mappings.add(createMapping("*:/platform/administrators", "/portal/admin", null));
+      mappings.add(createMapping("*:/platform/users", "/portal/intranet/home", "/portal/intranet/"));
+      mappings.add(createMapping("*:/platform/administrators", "/portal/intranet/admin", "/portal/intranet"));
+      mappings.add(createMapping("*:/platform/users", "/portal/intranet/hr/home", "/portal/intranet/hr"));
+      mappings.add(createMapping("*:/platform/users", "/portal/acme/home", "/portal/acme"));
+
+      RedirectMappingConfig config = new RedirectMappingConfig();
+      config.setRedirectMappings(mappings);
+      configuration = RedirectConfiguration.compile(config, "/portal/classic/home", "/portal/classic/sitemap");
+   }
+
+   private MappingParam createMapping(String groupName, String loginURL, String path)
+   {
+      MappingParam mapping = new MappingParam();
+      mapping.setGroupName(groupName);
+      mapping.setLoginURL(loginURL);
+      mapping.setLogoutURL(loginURL);
+      mapping.setPath(path);
+      return mapping;
+   }
+
+   public void testScopes()
+   {
+      assertEquals(5, configuration.size());
+      assertEquals(4, configuration.getScopes().size());
+      assertEquals("/portal/intranet", configuration.getRootScope().findScope("/portal/intranet/home").getPath());
+      assertEquals("/portal/intranet/hr", configuration.getRootScope().findScope("/portal/intranet//hr;jsessionid=1").getPath());
+      assertEquals("/", configuration.getRootScope().findScope("/portal/intranet2/home").getPath());
+      assertEquals("/", configuration.getRootScope().findScope(null).getPath());
+   }
+
+   public void testDeepestScopeWins()
+   {
+      assertEquals("/portal/intranet/admin", configuration.resolve(administrator, "/portal/intranet/home").getLoginURL());
+      assertEquals("/portal/intranet/home", configuration.resolve(user, "/portal/intranet/home").getLoginURL());
+      assertEquals("/portal/intranet/hr/home", configuration.resolve(user, "/portal/intranet/hr").getLoginURL());
+      assertEquals("/portal/acme/home", configuration.resolve(user, "/portal/acme/").getLoginURL());
+   }
+
+   public void testFallbackToParentScope()
+   {
+      assertEquals("/portal/intranet/admin", configuration.resolve(administrator, "/portal/intranet/hr").getLoginURL());
+      assertEquals("/portal/admin", configuration.resolve(administrator, "/portal/acme/home").getLoginURL());
+      assertEquals("/portal/admin", configuration.resolve(administrator, "/portal/classic").getLoginURL());
+      assertEquals("/portal/admin", configuration.resolve(administrator).getLoginURL());
+      assertTrue(configuration.resolve(user, "/portal/classic").isDefault());
+
+      // Repeated resolution gives the same result
+      assertEquals("/portal/admin", configuration.resolve(administrator, "/portal/acme/home").getLoginURL());
+      assertTrue(configuration.resolve(user, "/portal/classic").isDefault());
+   }
+
+   public void testNormalizePath()
+   {
+      assertEquals("/portal/intranet", MappingScope.normalizePath(" portal//intranet/ "));
+      assertNull(MappingScope.normalizePath("/"));
+      assertNull(MappingScope.normalizePath(null));
+   }
+
+}
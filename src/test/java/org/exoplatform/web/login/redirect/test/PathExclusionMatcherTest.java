@@ -0,0 +1,70 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.web.login.redirect.PathExclusionMatcher;
+
+/**
+ * @version $Revision$
+ */
+public class PathExclusionMatcherTest extends TestCase
+{
+   public void testPrefixes()
+   {
+      PathExclusionMatcher matcher = PathExclusionMatcher.parse("/skins/, /javascript/", null);
+      assertTrue(matcher.isExcluded("/portal/skins/Default/Stylesheet.css", "/portal".length()));
+      assertTrue(matcher.isExcluded("/portal/javascript/merged.js", "/portal".length()));
+      assertFalse(matcher.isExcluded("/portal/classic/home", "/portal".length()));
+      assertFalse(matcher.isExcluded("/portal/skin", "/portal".length()));
+      assertFalse(matcher.isExcluded("/skins/Default/Stylesheet.css", "/portal".length()));
+   }
+
+   public void testExtensions()
+   {
+      PathExclusionMatcher matcher = PathExclusionMatcher.parse(null, "css,.JS, png");
+      assertTrue(matcher.isExcluded("/portal/skins/Default/Stylesheet.css", 7));
+      assertTrue(matcher.isExcluded("/portal/scripts/merged.min.js", 7));
+      assertTrue(matcher.isExcluded("/portal/images/Logo.PNG", 7));
+      assertFalse(matcher.isExcluded("/portal/classic/css", 7));
+      assertFalse(matcher.isExcluded("/portal/styles.css/home", 7));
+   }
+
+   public void testExtensionWithPathParameters()
+   {
+      PathExclusionMatcher matcher = PathExclusionMatcher.parse(null, "js");
+      assertTrue(matcher.isExcluded("/portal/x/app.js;jsessionid=ABC", 7));
+      assertTrue(matcher.isExcluded("/portal/x;v=1/app.js", 7));
+      assertFalse(matcher.isExcluded("/portal/x/home;file=app.js", 7));
+      assertFalse(matcher.isExcluded("/portal/x.js;v=1/home", 7));
+   }
+
+   public void testEmpty()
+   {
+      PathExclusionMatcher matcher = PathExclusionMatcher.parse(null, null);
+      assertTrue(matcher.isEmpty());
+      assertFalse(matcher.isExcluded("/portal/skins/Default/Stylesheet.css", 7));
+   }
+
+}
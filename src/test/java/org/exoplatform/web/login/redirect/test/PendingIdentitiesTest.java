@@ -0,0 +1,198 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpSession;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ObjectParameter;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityRegistry;
+import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.web.login.redirect.LoginRedirectService;
+import org.exoplatform.web.login.redirect.MappingParam;
+import org.exoplatform.web.login.redirect.PendingIdentities;
+import org.exoplatform.web.login.redirect.RedirectMappingConfig;
+
+/**
+ * @version $Revision$
+ */
+public class PendingIdentitiesTest extends TestCase
+{
+   private final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+
+   private final HttpSession session = (HttpSession)Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[]{HttpSession.class}, new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+         {
+            if ("getAttribute".equals(method.getName()))
+            {
+               return attributes.get(args[0]);
+            }
+            else if ("setAttribute".equals(method.getName()))
+            {
+               attributes.put((String)args[0], args[1]);
+            }
+            else if ("removeAttribute".equals(method.getName()))
+            {
+               attributes.remove(args[0]);
+            }
+            else if ("getId".equals(method.getName()))
+            {
+               return "session1";
+            }
+            return null;
+         }
+      });
+
+   public void testLoginCompletedByRequestAfterRegistrationInOtherThread() throws Exception
+   {
+      final IdentityRegistry identityRegistry = new IdentityRegistry(new InitParams());
+      final LoginRedirectService service = createService(identityRegistry, 60000);
+      try
+      {
+         // First request after authentication doesn't find identity and leaves login unprocessed
+         final AtomicReference<String> firstLocation = new AtomicReference<String>("not called");
+         final AtomicBoolean deferred = new AtomicBoolean();
+         runInThread(new Runnable()
+         {
+            public void run()
+            {
+               firstLocation.set(service.getLoginRedirectURL("root"));
+               deferred.set(firstLocation.get() == null && service.getPendingIdentities().defer(session, 0));
+            }
+         });
+         assertNull(firstLocation.get());
+         assertTrue(deferred.get());
+         assertEquals(1, service.getIdentityWaits());
+
+         // Identity is registered by other thread, for example by login module of concurrent request of the user
+         runInThread(new Runnable()
+         {
+            public void run()
+            {
+               identityRegistry.register(new Identity("root", Collections.singleton(MembershipEntry
+                  .parse("member:/platform/users"))));
+            }
+         });
+
+         // Next request of the user detects the login again and redirects it
+         final AtomicReference<String> nextLocation = new AtomicReference<String>();
+         runInThread(new Runnable()
+         {
+            public void run()
+            {
+               nextLocation.set(service.getLoginRedirectURL("root"));
+               service.getPendingIdentities().loginRedirected(session);
+            }
+         });
+         assertEquals("/portal/classic/users", nextLocation.get());
+         assertEquals(1, service.getIdentityWaitsCompleted());
+         assertEquals(0, service.getIdentityWaitTimeouts());
+         assertTrue(attributes.isEmpty());
+      }
+      finally
+      {
+         service.stop();
+      }
+   }
+
+   public void testTimeout()
+   {
+      PendingIdentities pendingIdentities = new PendingIdentities(1000);
+      assertTrue(pendingIdentities.defer(session, 5000));
+      assertEquals(5000L, attributes.get(PendingIdentities.ATTRIBUTE_NAME));
+      assertTrue(pendingIdentities.defer(session, 5999));
+      assertEquals(2, pendingIdentities.getWaits());
+
+      // Login is processed without redirect after timeout
+      assertFalse(pendingIdentities.defer(session, 6000));
+      assertEquals(1, pendingIdentities.getTimeouts());
+      assertTrue(attributes.isEmpty());
+
+      // Redirect without previous attempts isn't counted
+      pendingIdentities.loginRedirected(session);
+      assertEquals(0, pendingIdentities.getCompleted());
+   }
+
+   public void testDisabled()
+   {
+      PendingIdentities pendingIdentities = new PendingIdentities(0);
+      assertFalse(pendingIdentities.defer(session, 5000));
+      assertTrue(attributes.isEmpty());
+      assertEquals(0, pendingIdentities.getWaits());
+   }
+
+   private static void runInThread(Runnable task) throws InterruptedException
+   {
+      Thread thread = new Thread(task);
+      thread.start();
+      thread.join(10000);
+      assertFalse(thread.isAlive());
+   }
+
+   private static LoginRedirectService createService(IdentityRegistry identityRegistry, int identityWaitTimeout)
+   {
+      MappingParam mapping = new MappingParam();
+      mapping.setGroupName("*:/platform/users");
+      mapping.setLoginURL("/portal/classic/users");
+      mapping.setLogoutURL("/portal/classic");
+      RedirectMappingConfig config = new RedirectMappingConfig();
+      config.setRedirectMappings(Collections.singletonList(mapping));
+
+      InitParams params = new InitParams();
+      addValueParam(params, "defaultLoginURL", "/portal/classic/home");
+      addValueParam(params, "defaultLogoutURL", "/portal/classic");
+      addValueParam(params, "identityWaitTimeout", String.valueOf(identityWaitTimeout));
+      ObjectParameter mappingsParam = new ObjectParameter();
+      mappingsParam.setName("redirectMappings");
+      mappingsParam.setObject(config);
+      params.put(mappingsParam.getName(), mappingsParam);
+
+      LoginRedirectService service = new LoginRedirectService(params, identityRegistry);
+      service.start();
+      return service;
+   }
+
+   private static void addValueParam(InitParams params, String name, String value)
+   {
+      ValueParam param = new ValueParam();
+      param.setName(name);
+      param.setValue(value);
+      params.put(name, param);
+   }
+
+}
@@ -0,0 +1,285 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.web.login.redirect.LocalSessionUserRegistry;
+import org.exoplatform.web.login.redirect.LoggedUsersRegistry;
+import org.exoplatform.web.login.redirect.LogoutTargetCache;
+import org.exoplatform.web.login.redirect.PersistentSessionUserRegistry;
+
+/**
+ * Warm start of registry from snapshot file written by previous instance.
+ *
+ * @version $Revision$
+ */
+public class PersistentSessionUserRegistryTest extends TestCase
+{
+   private File file;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      file = File.createTempFile("login-redirect", ".snapshot");
+      file.delete();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      file.delete();
+   }
+
+   private PersistentSessionUserRegistry createRegistry(long maxAge)
+   {
+      LocalSessionUserRegistry local = new LocalSessionUserRegistry(new LoggedUsersRegistry(100, 60000, 60000),
+         new LogoutTargetCache(100));
+      // Changes are written only by explicit flush or on stop
+      return new PersistentSessionUserRegistry(local, file, 0, maxAge);
+   }
+
+   public void testWarmStart()
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      registry.putUser("session1", "root", 1800000);
+      registry.putUser("session2", "john", 1800000);
+      registry.putLogoutURL("root", "/portal/classic/home");
+      registry.sessionDestroyed("session2");
+      registry.stop();
+
+      // File is loaded during start
+      registry = createRegistry(60000);
+      registry.start();
+      assertEquals(1, registry.getSessionCount());
+      assertEquals(1, registry.getLogoutURLCount());
+      assertEquals("root", registry.getUser("session1"));
+      assertNull(registry.getUser("session2"));
+      assertEquals(1, registry.getSessionCount());
+      assertEquals("/portal/classic/home", registry.removeLogoutURL("root"));
+      assertEquals("root", registry.removeUser("session1"));
+      registry.stop();
+
+      // Removals were persisted too
+      registry = createRegistry(60000);
+      registry.start();
+      assertNull(registry.getUser("session1"));
+      assertNull(registry.removeLogoutURL("root"));
+      registry.stop();
+   }
+
+   public void testEntriesAfterStartAreNotOverwritten()
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      registry.putUser("session1", "root", 1800000);
+      registry.stop();
+
+      registry = createRegistry(60000);
+      registry.start();
+      registry.putUser("session1", "john", 1800000);
+      assertEquals("john", registry.getUser("session1"));
+      registry.stop();
+
+      registry = createRegistry(60000);
+      registry.start();
+      assertEquals("john", registry.getUser("session1"));
+      registry.stop();
+   }
+
+   public void testExpiredEntriesAreIgnored() throws Exception
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      registry.putUser("session1", "root", 1800000);
+      registry.stop();
+
+      registry = createRegistry(-1);
+      registry.start();
+      assertNull(registry.getUser("session1"));
+      registry.stop();
+   }
+
+   public void testCompaction()
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      for (int i = 0; i < 3000; i++)
+      {
+         registry.putUser("session" + i, "root", 1800000);
+         registry.sessionDestroyed("session" + i);
+      }
+      registry.putUser("session", "root", 1800000);
+      registry.flush();
+      long compacted = file.length();
+      assertTrue(compacted < 1000);
+
+      registry.putUser("other", "john", 1800000);
+      registry.flush();
+      assertTrue(file.length() > compacted);
+      registry.stop();
+
+      registry = createRegistry(60000);
+      registry.start();
+      assertEquals("root", registry.getUser("session"));
+      assertEquals("john", registry.getUser("other"));
+      registry.stop();
+   }
+
+   public void testInterruptedCompactionIsRecovered() throws Exception
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      registry.putUser("session1", "root", 1800000);
+      registry.stop();
+
+      // Crash after original file was moved aside and before compacted file took its place
+      File previous = new File(file.getPath() + ".previous");
+      try
+      {
+         assertTrue(file.renameTo(previous));
+
+         registry = createRegistry(60000);
+         registry.start();
+         assertEquals("root", registry.getUser("session1"));
+         registry.stop();
+         assertTrue(file.exists());
+         assertFalse(previous.exists());
+      }
+      finally
+      {
+         previous.delete();
+      }
+   }
+
+   public void testIncompleteRecordIsSkipped() throws Exception
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      registry.putUser("session1", "root", 1800000);
+      registry.stop();
+
+      // Crash during write of next record
+      FileOutputStream out = new FileOutputStream(file, true);
+      out.write(new byte[] { 1, 0, 0, 0 });
+      out.close();
+
+      // New records are appended after truncated incomplete record
+      registry = createRegistry(60000);
+      registry.start();
+      assertEquals("root", registry.getUser("session1"));
+      registry.putUser("session2", "john", 1800000);
+      registry.flush();
+      registry.stop();
+
+      registry = createRegistry(60000);
+      registry.start();
+      assertEquals("root", registry.getUser("session1"));
+      assertEquals("john", registry.getUser("session2"));
+      registry.stop();
+   }
+
+   public void testIncompleteStringIsSkipped() throws Exception
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      registry.putUser("session1", "root", 1800000);
+      registry.stop();
+
+      // Record with length of key, but without the key
+      DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true));
+      out.writeByte(1);
+      out.writeLong(System.currentTimeMillis());
+      out.writeLong(1800000);
+      out.writeInt(Integer.MAX_VALUE);
+      out.close();
+
+      registry = createRegistry(60000);
+      registry.start();
+      assertEquals("root", registry.getUser("session1"));
+      assertEquals(1, registry.getSessionCount());
+      registry.stop();
+   }
+
+   public void testSessionIdsAreHashed() throws Exception
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      registry.putUser("E8C3A1F0B2D4session", "root", 1800000);
+      registry.stop();
+
+      byte[] content = new byte[(int)file.length()];
+      FileInputStream in = new FileInputStream(file);
+      try
+      {
+         assertEquals(content.length, in.read(content));
+      }
+      finally
+      {
+         in.close();
+      }
+      String text = new String(content, "ISO-8859-1");
+      assertFalse(text.contains("E8C3A1F0B2D4session"));
+      assertTrue(text.contains("root"));
+   }
+
+   public void testPendingChangesAreBounded()
+   {
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      for (int i = 0; i < 10000; i++)
+      {
+         registry.putUser("session" + i, "root", 1800000);
+      }
+      // Flush interval is zero, so changes were written by request thread
+      assertTrue(file.length() > 0);
+      registry.stop();
+   }
+
+   public void testInvalidFile() throws Exception
+   {
+      RandomAccessFile out = new RandomAccessFile(file, "rw");
+      out.writeInt(42);
+      out.close();
+
+      PersistentSessionUserRegistry registry = createRegistry(60000);
+      registry.start();
+      assertNull(registry.getUser("session1"));
+      registry.putUser("session1", "root", 1800000);
+      registry.stop();
+
+      // Invalid file was replaced
+      registry = createRegistry(60000);
+      registry.start();
+      assertEquals("root", registry.getUser("session1"));
+      registry.stop();
+   }
+
+}
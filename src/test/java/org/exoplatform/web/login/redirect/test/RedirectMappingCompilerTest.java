@@ -0,0 +1,172 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.web.login.redirect.MappingParam;
+import org.exoplatform.web.login.redirect.RedirectConfiguration;
+import org.exoplatform.web.login.redirect.RedirectMappingCompiler;
+import org.exoplatform.web.login.redirect.RedirectMappingConfig;
+
+/**
+ * @version $Revision$
+ */
+public class RedirectMappingCompilerTest extends TestCase
+{
+   private final List<MappingParam> mappings = new ArrayList<MappingParam>();
+
+   private final RedirectMappingCompiler compiler = new RedirectMappingCompiler();
+
+   private void addMapping(String groupName, String loginURL)
+   {
+      MappingParam mapping = new MappingParam();
+      mapping.setGroupName(groupName);
+      mapping.setLoginURL(loginURL);
+      mapping.setLogoutURL("/portal/classic/home");
+      mappings.add(mapping);
+   }
+
+   private RedirectConfiguration compile()
+   {
+      RedirectMappingConfig config = new RedirectMappingConfig();
+      config.setRedirectMappings(mappings);
+      return compiler.compile(config, "/portal/classic/home", "/portal/classic/home");
+   }
+
+   public void testDuplicateAndShadowedMappings()
+   {
+      addMapping("manager:/organization/management", "/portal/g/management");
+      addMapping("*:/platform/administrators", "/portal/g/administrators");
+      addMapping("manager:/organization/management", "/portal/g/duplicate");
+      addMapping("manager:/platform/administrators", "/portal/g/shadowed");
+      addMapping("*:/organization/management", "/portal/g/management-members");
+
+      RedirectConfiguration configuration = compile();
+      assertEquals(3, configuration.size());
+      assertEquals(1, compiler.getDuplicateCount());
+      assertEquals(1, compiler.getShadowedCount());
+      assertEquals(2, compiler.getProblems().size());
+      assertTrue(compiler.getProblems().get(0).startsWith("Mapping #3"));
+      assertTrue(compiler.getProblems().get(1).startsWith("Mapping #4"));
+
+      // First of duplicate mappings is used
+      assertEquals("/portal/g/management", configuration.resolve(
+         Arrays.asList(new MembershipEntry("/organization/management", "manager"))).getLoginURL());
+      assertEquals("/portal/g/management-members", configuration.resolve(
+         Arrays.asList(new MembershipEntry("/organization/management", "member"))).getLoginURL());
+      assertEquals("/portal/g/administrators", configuration.resolve(
+         Arrays.asList(new MembershipEntry("/platform/administrators", "manager"))).getLoginURL());
+   }
+
+   public void testInvalidMappings()
+   {
+      addMapping("*:/platform/users", "/portal/classic/home");
+      addMapping("platform/users", "/portal/classic/home");
+      addMapping("*:/platform/administrators", "/portal/${unknown}/home");
+      addMapping(null, "/portal/classic/home");
+
+      try
+      {
+         compile();
+         fail("Invalid mappings were compiled");
+      }
+      catch (IllegalArgumentException e)
+      {
+         assertEquals(3, compiler.getInvalidCount());
+         assertTrue(e.getMessage().contains("Mapping #2"));
+         assertTrue(e.getMessage().contains("Mapping #3"));
+         assertTrue(e.getMessage().contains("Mapping #4"));
+      }
+   }
+
+   public void testInvalidMappingsSkipped()
+   {
+      addMapping("*:/platform/users", "/portal/classic/home");
+      addMapping("platform/users", "/portal/classic/home");
+      addMapping("*:/platform/administrators", "/portal/${unknown}/home");
+
+      compiler.setSkipInvalid(true);
+      RedirectConfiguration configuration = compile();
+      assertEquals(1, configuration.size());
+      assertEquals(2, compiler.getInvalidCount());
+      assertEquals(2, compiler.getProblems().size());
+      assertTrue(compiler.getProblems().get(0).startsWith("Mapping #2"));
+      assertTrue(compiler.getProblems().get(0).endsWith("It's ignored"));
+   }
+
+   public void testInvalidDefaultURLs()
+   {
+      addMapping("*:/platform/users", "/portal/classic/home");
+      RedirectMappingConfig config = new RedirectMappingConfig();
+      config.setRedirectMappings(mappings);
+
+      try
+      {
+         compiler.compile(config, "/portal/${unknown}/home", "/portal/classic/home");
+         fail("Invalid default URL was compiled");
+      }
+      catch (IllegalArgumentException e)
+      {
+         assertEquals(1, compiler.getInvalidCount());
+         assertTrue(e.getMessage().contains("Default login URL"));
+      }
+
+      // Invalid default is reported and replaced by fallback
+      compiler.setSkipInvalid(true);
+      RedirectConfiguration configuration = compiler.compile(config, "/portal/${unknown}/home", "/portal/classic/home");
+      assertEquals(1, configuration.size());
+      assertNull(configuration.getDefaultDecision().getLoginURL());
+      assertEquals("/portal/classic/home", configuration.getDefaultDecision().getLogoutURL());
+      assertEquals(1, compiler.getInvalidCount());
+      assertTrue(compiler.getProblems().get(0).startsWith("Default login URL"));
+      assertTrue(compiler.getProblems().get(0).endsWith("It's ignored"));
+
+      compiler.setFallbackURLs("/portal/classic", "/portal/public/classic");
+      configuration = compiler.compile(config, "/portal/classic/home", "portal/classic home");
+      assertEquals("/portal/classic/home", configuration.getDefaultDecision().getLoginURL());
+      assertEquals("/portal/public/classic", configuration.getDefaultDecision().getLogoutURL());
+      assertTrue(compiler.getProblems().get(0).startsWith("Default logout URL"));
+   }
+
+   public void testStringsAreShared()
+   {
+      for (int i = 0; i < 100; i++)
+      {
+         addMapping(new String("*:/platform/group" + (i % 10)), new String("/portal/classic/home"));
+      }
+
+      RedirectConfiguration configuration = compile();
+      assertEquals(10, configuration.size());
+      assertEquals(90, compiler.getDuplicateCount());
+      // 10 groups with their names and the same URL for login and logout
+      assertEquals(10 + 10 + 1 + 1, compiler.getStringCount());
+      assertTrue(compiler.getSummary().startsWith("Compiled 10 of 100 mappings in 1 scopes"));
+   }
+
+}
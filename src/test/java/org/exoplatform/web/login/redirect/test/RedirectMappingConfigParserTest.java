@@ -0,0 +1,75 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.web.login.redirect.RedirectMappingConfig;
+import org.exoplatform.web.login.redirect.RedirectMappingConfigParser;
+
+/**
+ * @version $Revision$
+ */
+public class RedirectMappingConfigParserTest extends TestCase
+{
+   private static final String MAPPING = "<object type=\"org.exoplatform.web.login.redirect.MappingParam\">"
+      + "<field name=\"groupName\"><string>*:/platform/users</string></field>"
+      + "<field name=\"loginURL\"><string>/portal/intranet/home</string></field>"
+      + "<field name=\"logoutURL\"><string>/portal/intranet/sitemap</string></field></object>";
+
+   private InputStream stream(String xml) throws IOException
+   {
+      return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+   }
+
+   public void testParse() throws Exception
+   {
+      RedirectMappingConfig config = new RedirectMappingConfigParser().parse(stream("<redirect-mappings>"
+         + "<value-param><name>defaultLoginURL</name><value>/portal/classic/home</value></value-param>" + MAPPING
+         + "</redirect-mappings>"));
+      assertEquals("/portal/classic/home", config.getDefaultLoginURL());
+      assertNull(config.getDefaultLogoutURL());
+      assertEquals(1, config.getRedirectMappings().size());
+      assertEquals("*:/platform/users", config.getRedirectMappings().get(0).getGroupName());
+   }
+
+   public void testDoctypeRejected() throws Exception
+   {
+      try
+      {
+         new RedirectMappingConfigParser().parse(stream("<?xml version=\"1.0\"?>"
+            + "<!DOCTYPE redirect-mappings [<!ENTITY home SYSTEM \"file:///etc/passwd\">]><redirect-mappings>"
+            + MAPPING.replace("/portal/intranet/home", "&home;") + "</redirect-mappings>"));
+         fail("Document type declaration must be rejected");
+      }
+      catch (IOException e)
+      {
+         // expected
+      }
+   }
+
+}
@@ -0,0 +1,120 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.security.MembershipEntry;
+import org.exoplatform.web.login.redirect.LatencyHistogram;
+import org.exoplatform.web.login.redirect.MappingParam;
+import org.exoplatform.web.login.redirect.RedirectConfiguration;
+import org.exoplatform.web.login.redirect.RedirectMappingConfig;
+import org.exoplatform.web.login.redirect.RedirectStatistics;
+
+/**
+ * @version $Revision$
+ */
+public class RedirectStatisticsTest extends TestCase
+{
+   private MappingParam createMapping(String groupName, String loginURL, String path)
+   {
+      MappingParam mapping = new MappingParam();
+      mapping.setGroupName(groupName);
+      mapping.setLoginURL(loginURL);
+      mapping.setLogoutURL(loginURL);
+      mapping.setPath(path);
+      return mapping;
+   }
+
+   public void testMappingsWithSameGroup()
+   {
+      List<MappingParam> mappings = new ArrayList<MappingParam>();
+      mappings.add(createMapping("*:/platform/users", "/portal/classic/home", null));
+      mappings.add(createMapping("*:/platform/users", "/portal/intranet/home", "/portal/intranet"));
+      RedirectMappingConfig config = new RedirectMappingConfig();
+      config.setRedirectMappings(mappings);
+      RedirectConfiguration configuration = RedirectConfiguration.compile(config, "/portal/classic/home",
+         "/portal/classic/sitemap");
+
+      Collection<MembershipEntry> user = Arrays.<MembershipEntry>asList(new MembershipEntry("/platform/users"));
+      Collection<MembershipEntry> guest = Arrays.<MembershipEntry>asList(new MembershipEntry("/platform/guests"));
+      RedirectStatistics statistics = new RedirectStatistics();
+      statistics.redirectIssued(configuration.resolve(user, "/portal/classic"));
+      statistics.redirectIssued(configuration.resolve(user, "/portal/intranet/home"));
+      statistics.redirectIssued(configuration.resolve(user, "/portal/intranet/home"));
+      statistics.redirectIssued(configuration.resolve(guest, "/portal/intranet/home"));
+
+      Map<String, Long> redirects = statistics.getMappingRedirects();
+      // Mappings with the same group in different scopes are counted together
+      assertEquals(1, redirects.size());
+      assertEquals(Long.valueOf(3), redirects.get("*:/platform/users"));
+      assertEquals(1, statistics.getDefaultFallbacks());
+
+      statistics.resetMappingRedirects();
+      assertTrue(statistics.getMappingRedirects().isEmpty());
+      assertEquals(1, statistics.getDefaultFallbacks());
+   }
+
+   public void testHistogramFromManyThreads() throws Exception
+   {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      Thread[] threads = new Thread[8];
+      for (int i = 0; i < threads.length; i++)
+      {
+         final long value = (i + 1) * 1000L;
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               for (int j = 0; j < 1000; j++)
+               {
+                  histogram.record(value);
+               }
+            }
+         };
+         threads[i].start();
+      }
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      assertEquals(8000, histogram.getCount());
+      assertEquals(8000, histogram.getMax());
+      assertEquals(4500, histogram.getMean());
+      assertEquals(1023, histogram.getPercentile(0.1));
+      assertEquals(8000, histogram.getPercentile(1));
+
+      histogram.reset();
+      assertEquals(0, histogram.getCount());
+      assertEquals(0, histogram.getPercentile(0.5));
+   }
+
+}
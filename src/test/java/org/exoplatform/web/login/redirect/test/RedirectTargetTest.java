@@ -0,0 +1,96 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.web.login.redirect.RedirectTarget;
+
+/**
+ * @version $Revision$
+ */
+public class RedirectTargetTest extends TestCase
+{
+   public void testConstant()
+   {
+      RedirectTarget target = RedirectTarget.compile("/portal/public/classic/");
+      assertTrue(target.isConstant());
+      assertSame(target.expand("root", "portal"), target.expand("john", "portal"));
+      assertEquals("/portal/public/classic/", target.expand("root", "portal"));
+   }
+
+   public void testNormalization()
+   {
+      assertEquals("/portal/classic/home", RedirectTarget.compile(" /portal//classic/./sitemap/../home ").expand("root", "portal"));
+      assertEquals("/portal/classic/?a=b//c", RedirectTarget.compile("/portal/classic//?a=b//c").expand("root", "portal"));
+      assertEquals("http://localhost:8080/portal/classic", RedirectTarget.compile("http://localhost:8080/portal//classic")
+         .expand("root", "portal"));
+      assertEquals("/", RedirectTarget.compile("/portal/..").expand("root", "portal"));
+      // Scheme is case-insensitive
+      assertEquals("HTTP://host/x", RedirectTarget.compile("HTTP://host//x").expand("root", "portal"));
+      assertEquals("Https://host/portal/", RedirectTarget.compile("Https://host/portal/./classic/..").expand("root", "portal"));
+   }
+
+   public void testPlaceholders()
+   {
+      RedirectTarget target = RedirectTarget.compile("/${portal}/u/${user}/dashboard");
+      assertFalse(target.isConstant());
+      assertEquals("/portal/u/root/dashboard", target.expand("root", "portal"));
+      assertEquals("/ecm/u/john%20doe%2Fx/dashboard", target.expand("john doe/x", "ecm"));
+      assertEquals("/portal/u//dashboard", target.expand(null, "portal"));
+      assertEquals("/portal/u/%2E/dashboard", target.expand(".", "portal"));
+      assertEquals("/portal/u/%2E%2E/dashboard", target.expand("..", "portal"));
+      assertEquals("/portal/u/john.doe/dashboard", target.expand("john.doe", "portal"));
+   }
+
+   public void testRelative()
+   {
+      assertEquals("portal/classic/home", RedirectTarget.compile("portal/classic/home").expand("root", "portal"));
+      assertEquals("../sitemap", RedirectTarget.compile("../sitemap").expand("root", "portal"));
+      assertEquals("u/root/dashboard?a=b:c", RedirectTarget.compile("u/${user}/dashboard?a=b:c").expand("root", "portal"));
+   }
+
+   public void testInvalid()
+   {
+      assertInvalid("//evil.example.com/");
+      assertInvalid("/portal/class ic");
+      assertInvalid("/portal/../..");
+      assertInvalid("/portal/${unknown}");
+      assertInvalid("/portal/${user");
+      assertInvalid("javascript:alert(1)");
+      assertInvalid("ftp://example.com/home");
+   }
+
+   private void assertInvalid(String url)
+   {
+      try
+      {
+         RedirectTarget.compile(url);
+         fail("URL " + url + " should be rejected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
+}
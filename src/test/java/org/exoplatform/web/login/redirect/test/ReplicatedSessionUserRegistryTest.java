@@ -0,0 +1,138 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.web.login.redirect.InProcessReplicationChannel;
+import org.exoplatform.web.login.redirect.LocalSessionUserRegistry;
+import org.exoplatform.web.login.redirect.LoggedUsersRegistry;
+import org.exoplatform.web.login.redirect.LogoutTargetCache;
+import org.exoplatform.web.login.redirect.ReplicatedSessionUserRegistry;
+
+/**
+ * Replication between two nodes connected by in-process channel.
+ *
+ * @version $Revision$
+ */
+public class ReplicatedSessionUserRegistryTest extends TestCase
+{
+   private ReplicatedSessionUserRegistry node1;
+   private ReplicatedSessionUserRegistry node2;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      // Flush interval is long, so batches are sent only by explicit flush or when they are full
+      node1 = createNode("node1", 10);
+      node2 = createNode("node2", 10);
+      node1.start();
+      node2.start();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      node1.stop();
+      node2.stop();
+   }
+
+   private ReplicatedSessionUserRegistry createNode(String nodeId, int batchSize)
+   {
+      LocalSessionUserRegistry near = new LocalSessionUserRegistry(new LoggedUsersRegistry(100, 60000, 60000),
+         new LogoutTargetCache(100));
+      return new ReplicatedSessionUserRegistry(nodeId, near, new InProcessReplicationChannel(getName()), batchSize, 3600000);
+   }
+
+   public void testLogoutOnOtherNode()
+   {
+      node1.putUser("session1", "root", 1800000);
+      node1.putLogoutURL("root", "/portal/classic/home");
+
+      // Not replicated yet, other node falls back as with local registry
+      assertNull(node2.getUser("session1"));
+      assertEquals(2, node1.getPendingCount());
+
+      node1.flush();
+      assertEquals("root", node2.getUser("session1"));
+
+      assertEquals("root", node2.removeUser("session1"));
+      assertEquals("/portal/classic/home", node2.removeLogoutURL("root"));
+      node2.flush();
+      assertNull(node1.getUser("session1"));
+      assertEquals(0, node1.getLogoutURLCount());
+   }
+
+   public void testChangesCoalescedInBatch()
+   {
+      node1.putUser("session1", "root", 1800000);
+      node1.removeUser("session1");
+      node1.putUser("session2", "john", 1800000);
+      assertEquals(2, node1.getPendingCount());
+
+      node1.flush();
+      assertNull(node2.getUser("session1"));
+      assertEquals("john", node2.getUser("session2"));
+      assertEquals(1, node2.getSessionCount());
+   }
+
+   public void testFullBatchSentByFlusher() throws Exception
+   {
+      for (int i = 0; i < 10; i++)
+      {
+         node1.putUser("session" + i, "user" + i, 1800000);
+      }
+
+      // Request thread only hands the batch over, it's sent by flusher thread of the registry
+      for (int i = 0; i < 100 && node2.getSessionCount() < 10; i++)
+      {
+         Thread.sleep(20);
+      }
+      assertEquals(0, node1.getPendingCount());
+      assertEquals(10, node2.getSessionCount());
+   }
+
+   public void testSessionDestroyedReplicated()
+   {
+      node1.putUser("session1", "root", 1800000);
+      node1.flush();
+      node2.sessionDestroyed("session1");
+      node2.flush();
+      assertNull(node1.getUser("session1"));
+   }
+
+   public void testChannelIsRequired()
+   {
+      try
+      {
+         new ReplicatedSessionUserRegistry(new InitParams());
+         fail("Registry without replication channel must not be created");
+      }
+      catch (IllegalArgumentException e)
+      {
+         assertTrue(e.getMessage().contains("replicationChannel"));
+      }
+   }
+
+}
@@ -0,0 +1,197 @@
+/******************************************************************************
+ * JBoss, a division of Red Hat                                               *
+ * Copyright 2011, Red Hat Middleware, LLC, and individual                    *
+ * contributors as indicated by the @authors tag. See the                     *
+ * copyright.txt in the distribution for a full listing of                    *
+ * individual contributors.                                                   *
+ *                                                                            *
+ * This is free software; you can redistribute it and/or modify it            *
+ * under the terms of the GNU Lesser General Public License as                *
+ * published by the Free Software Foundation; either version 2.1 of           *
+ * the License, or (at your option) any later version.                        *
+ *                                                                            *
+ * This software is distributed in the hope that it will be useful,           *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU           *
+ * Lesser General Public License for more details.                            *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public           *
+ * License along with this software; if not, write to the Free                *
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA         *
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.                   *
+ ******************************************************************************/
+package org.exoplatform.web.login.redirect.test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.web.login.redirect.TokenRevocationQueue;
+import org.exoplatform.web.login.redirect.TokenRevoker;
+
+/**
+ * @version $Revision$
+ */
+public class TokenRevocationQueueTest extends TestCase
+{
+   private final List<String> deleted = new CopyOnWriteArrayList<String>();
+
+   // Worker is blocked in first deletion until latch is released
+   private final CountDownLatch release = new CountDownLatch(1);
+
+   private final TokenRevoker revoker = new TokenRevoker()
+   {
+      public void revoke(String token)
+      {
+         try
+         {
+            release.await(10, TimeUnit.SECONDS);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         deleted.add(token);
+      }
+   };
+
+   public void testTokenRejectedUntilDeleted() throws Exception
+   {
+      TokenRevocationQueue queue = new TokenRevocationQueue(10, 5, revoker);
+      queue.start();
+      try
+      {
+         assertTrue(queue.revoke("token1"));
+         assertTrue(queue.isRevoked("token1"));
+         assertFalse(queue.isRevoked("token2"));
+
+         release.countDown();
+         for (int i = 0; i < 100 && queue.hasTombstones(); i++)
+         {
+            Thread.sleep(50);
+         }
+         assertFalse(queue.isRevoked("token1"));
+         assertEquals(1, deleted.size());
+         assertEquals(1, queue.getRevokedCount());
+      }
+      finally
+      {
+         queue.stop();
+      }
+   }
+
+   public void testSynchronousFallbackWhenQueueIsFull()
+   {
+      // Worker is not started, so queue is never drained
+      TokenRevocationQueue queue = new TokenRevocationQueue(2, 5, revoker);
+      release.countDown();
+      assertTrue(queue.revoke("token1"));
+      assertTrue(queue.revoke("token2"));
+      assertEquals(2, queue.getQueueDepth());
+
+      assertFalse(queue.revoke("token3"));
+      assertEquals(1, queue.getSynchronousRevocations());
+      assertFalse(queue.isRevoked("token3"));
+      assertEquals(2, queue.getPeakQueueDepth());
+
+      // Remaining tokens are deleted when queue is stopped
+      queue.stop();
+      assertEquals(3, deleted.size());
+      assertEquals(0, queue.getQueueDepth());
+      assertFalse(queue.hasTombstones());
+   }
+
+   public void testSynchronousFallbackUsesSynchronousRevoker()
+   {
+      final List<String> deletedSynchronously = new CopyOnWriteArrayList<String>();
+      TokenRevocationQueue queue = new TokenRevocationQueue(1, 5, 10, revoker, new TokenRevoker()
+      {
+         public void revoke(String token)
+         {
+            deletedSynchronously.add(token);
+         }
+      });
+      release.countDown();
+      assertTrue(queue.revoke("token1"));
+      assertFalse(queue.revoke("token2"));
+      assertEquals(1, deletedSynchronously.size());
+      assertEquals("token2", deletedSynchronously.get(0));
+      assertTrue(deleted.isEmpty());
+
+      // Worker revoker deletes tokens remaining in queue
+      queue.stop();
+      assertEquals(1, deleted.size());
+      assertEquals("token1", deleted.get(0));
+   }
+
+   public void testFailedDeletionIsRetried() throws Exception
+   {
+      // Revoker without portal container fails until the container becomes available
+      final AtomicInteger attempts = new AtomicInteger();
+      final CountDownLatch containerAvailable = new CountDownLatch(1);
+      TokenRevoker failingRevoker = new TokenRevoker()
+      {
+         public void revoke(String token)
+         {
+            attempts.incrementAndGet();
+            if (containerAvailable.getCount() > 0)
+            {
+               throw new IllegalStateException("Portal container of LoginRedirectFilter is not available");
+            }
+            deleted.add(token);
+         }
+      };
+
+      TokenRevocationQueue queue = new TokenRevocationQueue(10, 5, 10, failingRevoker);
+      queue.start();
+      try
+      {
+         assertTrue(queue.revoke("token1"));
+         for (int i = 0; i < 100 && attempts.get() < 3; i++)
+         {
+            Thread.sleep(20);
+         }
+         assertTrue(attempts.get() >= 3);
+         assertTrue(queue.getFailures() >= 2);
+         assertTrue(queue.isRevoked("token1"));
+         assertTrue(deleted.isEmpty());
+
+         containerAvailable.countDown();
+         for (int i = 0; i < 100 && queue.hasTombstones(); i++)
+         {
+            Thread.sleep(20);
+         }
+         assertFalse(queue.isRevoked("token1"));
+         assertEquals(1, deleted.size());
+         assertEquals(1, queue.getRevokedCount());
+      }
+      finally
+      {
+         queue.stop();
+      }
+   }
+
+   public void testFailedSynchronousDeletionKeepsTombstone()
+   {
+      TokenRevocationQueue queue = new TokenRevocationQueue(1, 5, new TokenRevoker()
+      {
+         public void revoke(String token)
+         {
+            throw new IllegalStateException("Token store is not available");
+         }
+      });
+      assertTrue(queue.revoke("token1"));
+      assertFalse(queue.revoke("token2"));
+      assertEquals(1, queue.getFailures());
+      assertTrue(queue.isRevoked("token2"));
+
+      queue.stop();
+      assertEquals(2, queue.getFailures());
+      assertFalse(queue.hasTombstones());
+   }
+
+}